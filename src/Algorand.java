@@ -1,7 +1,8 @@
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Special steps in Algorand
@@ -28,12 +29,12 @@ public class Algorand implements Runnable {
      * Current round
      */
     public static int round = Constants.INITIAL_ROUND;
+    private static Set<Block> tentativeBlocks = new HashSet<>();
     /**
-     * Block proposals seen. Helps the node track down a block by its hash.
+     * In pipelined mode, assembles the proposal for the next round while BA* runs
      */
-    private static Map<String, Block> blockProposals = new HashMap<>();
-
-    private static Set<Block> tentativeBlocks = new HashSet<>();
+    private static PipelinedProposer nextRoundProposer = null;
+    private static Thread nextRoundProposerThread = null;
 
     @Override
     public void run() {
@@ -44,79 +45,98 @@ public class Algorand implements Runnable {
      * Main method for Algorand. Two stages:
      * 1. retrieve highest priority proposed block
      * 2. run BA* on this block
+     * In pipelined mode the proposal for the next round is assembled during stage 2
      */
     public static void runAlgorand() {
         while(true) {
             System.out.println("Round: " + round);
             Block highestPriorityBlock = runProposalStage();
             System.out.println("Highest block proposal: " + Block.getHash(highestPriorityBlock));
+            if (Constants.PIPELINED_CONSENSUS) {
+                startNextRoundProposal(highestPriorityBlock);
+            }
             BAStarResult result = runBAStar(highestPriorityBlock);
+            if (result == null) {
+                /* interrupted while fetching the winning block */
+                return;
+            }
             Block winner = result.block;
-            String winningHash = Block.getHash(winner);
-            String emptyHash = Block.getHash(Block.getEmptyBlock());
-            System.out.println("Hash of winning block: " + Block.getHash(winner));
-            System.out.println("Hash of empty block: " + Block.getHash(Block.getEmptyBlock()));
+            Hash winningHash = Block.getHash(winner);
+            Hash emptyHash = Block.EMPTY_HASH;
+            System.out.println("Hash of winning block: " + winningHash);
+            System.out.println("Hash of empty block: " + emptyHash);
             System.out.println("Consensus type: " + result.consensus);
 
             if (result.consensus == Consensus.FINAL) {
-                if (winningHash.compareTo(emptyHash) != 0) {
+                if (!winningHash.equals(emptyHash)) {
                     // see if there is a tentative block that this
                     // block references
                     // might have to check several back
                     for(Block tentative : tentativeBlocks) {
-                        String tentativeHash = Block.getHash(tentative);
-                        if (winner.prevBlockHash.compareTo(tentativeHash) == 0) {
-                            LedgerManager.addBlock(tentative);
+                        Hash tentativeHash = Block.getHash(tentative);
+                        if (winner.prevBlockHash.equals(tentativeHash)) {
+                            if (LedgerManager.getBlock(tentativeHash) == null) {
+                                LedgerManager.addBlock(tentative);
+                            }
                             tentativeBlocks.remove(tentative);
                             break;
                         }
                     }
-                    LedgerManager.addBlock(winner);
+                    /* a resync while fetching the winner may already have committed it */
+                    if (LedgerManager.getBlock(winningHash) == null) {
+                        LedgerManager.addBlock(winner);
+                    }
                 }
             } else {
-                if (winningHash.compareTo(emptyHash) != 0) {
+                if (!winningHash.equals(emptyHash)) {
                     tentativeBlocks.add(winner);
                 }
             }
 
             /* remove block proposals from just completed round */
-            Set<Block> futureProposals = new HashSet<>();
-            while(!ConnectionManager.proposedBlockQueue.isEmpty()) {
-                try {
-                    Block block = ConnectionManager.proposedBlockQueue.take();
-                    if (block.round > round) {
-                        futureProposals.add(block);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            ConnectionManager.proposedBlockQueue.addAll(futureProposals);
+            ConnectionManager.proposalStore.discardRoundsUpTo(round);
 
             /* remove votes from just completed round */
-            Set<Message> futureVotes = new HashSet<>();
-            while(!ConnectionManager.blockHashQueue.isEmpty()) {
-                try {
-                    Message message = ConnectionManager.blockHashQueue.take();
-                    if (message.round > round) {
-                        futureVotes.add(message);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            ConnectionManager.blockHashQueue.addAll(futureVotes);
+            ConnectionManager.voteTally.discardRoundsUpTo(round);
             round++;
         }
     }
 
     public static Block runProposalStage() {
+        ConnectionManager.proposalStore.startRound(round);
+        Block lastBlock = LedgerManager.getLastBlock();
+        Hash lastBlockHash = Block.getHash(lastBlock);
+        Hash proposerStakeHash = getProposerStakeHash(lastBlock);
+        for (CertificateMessageData certificate : ConnectionManager.voteTally.startRound(round, lastBlockHash)) {
+            ConnectionManager.gossip(Message.MessageType.CERTIFICATE, certificate, null);
+        }
+
+        /* In pipelined mode, use the proposal assembled during the last round
+           if the block it builds on was committed */
+        Block proposedBlock = finishNextRoundProposal();
+        if (proposedBlock != null && !proposedBlock.prevBlockHash.equals(lastBlockHash)) {
+            ConnectionManager.proposalStore.remove(proposedBlock);
+            /* transactions the committed block already included are dropped */
+            List<Transaction> pending = new ArrayList<>();
+            for (Transaction tx : proposedBlock.transactions) {
+                if (!LedgerManager.isCommitted(tx.id)) {
+                    pending.add(tx);
+                }
+            }
+            ConnectionManager.mempool.addAll(pending);
+            proposedBlock = null;
+        }
+
         /* Wait until client either has transactions or block proposals
-            to process. Check every second */
-        while(ConnectionManager.proposedBlockQueue.isEmpty()
-                && ConnectionManager.transactionQueue.size() < Constants.BLOCK_SIZE) {
+            to process. Transactions are ready once a block's worth is pending
+            or the oldest has waited PROPOSAL_MAX_WAIT. A proposal wakes the
+            client up right away */
+        while(proposedBlock == null
+                && !ConnectionManager.proposalStore.hasProposals(round)
+                && !ConnectionManager.mempool.isReady(
+                        Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES, Constants.PROPOSAL_MAX_WAIT)) {
             try {
-                Thread.sleep(1000);
+                ConnectionManager.proposalStore.awaitProposals(round, 1, Constants.PROPOSAL_POLL_INTERVAL);
             } catch (InterruptedException e) {
                 // exit
             }
@@ -124,27 +144,23 @@ public class Algorand implements Runnable {
 
         //System.out.println("Attempting to propose a block...");
         /* Attempt to propose a block */
-        Block proposedBlock = null;
-        if (ConnectionManager.transactionQueue.size() >= Constants.BLOCK_SIZE) {
-            int priority = sortition(1000);
-            if (priority > 0) {
-                // CHANGE THIS LATER (random priority helps get the agreement process going)
-                Random r = new Random();
-                priority = r.nextInt(1000);
-                proposedBlock = proposeBlock(priority);
+        if (proposedBlock == null
+                && ConnectionManager.mempool.isReady(
+                        Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES, Constants.PROPOSAL_MAX_WAIT)) {
+            String stakeAddress = selectProposer(round, proposerStakeHash);
+            if (stakeAddress != null) {
+                proposedBlock = proposeBlock(stakeAddress, proposerStakeHash);
             }
         }
 
-        /* Wait PROPOSAL_TIMEOUT milliseconds for other block proposals to roll in */
-        int i = 0;
-        while(i < Constants.PROPOSAL_TIMEOUT) {
-            try {
-                System.out.println("...");
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            i+=1000;
+        /* Wait for other block proposals to roll in. Stop as soon as the expected
+           number of proposals (this client's included) is in, or after a window
+           sized from how long proposals have recently taken to arrive */
+        try {
+            ConnectionManager.proposalStore.awaitProposals(
+                    round, Constants.NUM_PROPOSERS, ConnectionManager.proposalStore.getProposalTimeout());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
 
         /* Obtain the highest priority block from the locally proposed block (if exists)
@@ -154,27 +170,18 @@ public class Algorand implements Runnable {
             highestPriorityBlock = proposedBlock;
         }
 
-        /* Check proposals received from others */
-        Set<Block> futureBlockProposals = new HashSet<>();
-        while(!ConnectionManager.proposedBlockQueue.isEmpty()) {
-            try {
-                Block block = ConnectionManager.proposedBlockQueue.take();
-                /* proposal for next round, so keep it */
-                if (block.round > Algorand.round) {
-                    futureBlockProposals.add(block);
-                /* proposal for this round */
-                } else if (block.round == Algorand.round && block.priority > highestPriorityBlock.priority) {
-                    blockProposals.put(Block.getHash(block), block);
-                    highestPriorityBlock = block;
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        /* Check proposals received from others for this round. Proposals for
+           later rounds stay in the store. Proposals that don't build on the
+           last block in the ledger (failed pipelined proposals), whose
+           priority isn't the one their proposer drew, or that are over the
+           block budget are ignored */
+        for (Block block : ConnectionManager.proposalStore.getProposals(Algorand.round)) {
+            if (block.prevBlockHash.equals(lastBlockHash) && outranks(block, highestPriorityBlock)
+                    && hasDrawnPriority(block, proposerStakeHash) && LedgerManager.validateBlock(block)) {
+                highestPriorityBlock = block;
             }
         }
 
-        /* add back in proposals for future rounds */
-        ConnectionManager.proposedBlockQueue.addAll(futureBlockProposals);
-
         /* If the highest priority block is valid, use it. If not, use an empty block*/
         if (LedgerManager.validateBlock(highestPriorityBlock)) {
             return highestPriorityBlock;
@@ -184,55 +191,147 @@ public class Algorand implements Runnable {
     }
 
     /**
-     * Proposes a block to peers
-     * @return the proposed block
+     * Starts assembling the proposal for the next round in the background
+     * @param candidate - block that is entering BA* this round
      */
-    public static Block proposeBlock(int priority) {
-        Transaction[] transactions = new Transaction[Constants.BLOCK_SIZE];
-        try {
-            for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
-                transactions[i] = ConnectionManager.transactionQueue.take();
-            }
-
-            String prevBlockHash = Block.getHash(LedgerManager.getLastBlock());
-            Block block = new Block(transactions, Algorand.round, priority, prevBlockHash);
-            blockProposals.put(Block.getHash(block), block);
+    private static void startNextRoundProposal(Block candidate) {
+        nextRoundProposer = new PipelinedProposer(round + 1, candidate);
+        nextRoundProposerThread = new Thread(nextRoundProposer);
+        nextRoundProposerThread.start();
+    }
 
-            //System.out.println("Proposing block with hash: " + Block.getHash(block));
-            ConnectionManager.gossip(Message.MessageType.BLOCK, block, null);
-            return block;
+    /**
+     * Stops the background proposer started in the last round
+     * @return the proposal it assembled, or null if there is none
+     */
+    private static Block finishNextRoundProposal() {
+        if (nextRoundProposerThread == null) {
+            return null;
+        }
+        nextRoundProposerThread.interrupt();
+        try {
+            nextRoundProposerThread.join();
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        return null;
+        Block proposal = nextRoundProposer.getProposal();
+        nextRoundProposer = null;
+        nextRoundProposerThread = null;
+        return proposal;
     }
 
     /**
-     * Flips a weighted coin in order to decide if the user becomes a committee member
-     * Simulation of sortition
-     * @param balance - balance of the user
-     * @return true if chosen as a committee member; false if not
+     * Compares two proposals. The higher priority wins; between equal priorities
+     * the lower block hash wins, so every client picks the same proposal
+     * @param block - proposal to check
+     * @param other - proposal to compare against
+     * @return true if block outranks other; false otherwise
      */
-    public static int sortition(int balance) {
-        /*double chance = (double) balance / (double) Constants.CURRENCY_SUPPLY;
-        double flip = Math.random();
-        if (flip <= chance) {
-            return true;
+    private static boolean outranks(Block block, Block other) {
+        if (block.priority != other.priority) {
+            return block.priority > other.priority;
         }
-        return false;*/
-        return balance;
+        return Block.getHash(block).compareTo(Block.getHash(other)) < 0;
     }
 
-    public static void committeeVote(int step, String blockHash) {
+    /**
+     * Finds the block whose balances give the proposer's stake for a proposal
+     * built on parent. That is the block before parent, so a pipelined
+     * proposal can be drawn before the block it builds on is committed.
+     * Proposals built on genesis use genesis
+     * @param parent - block the proposal builds on
+     * @return hash of the block that gives the stake
+     */
+    public static Hash getProposerStakeHash(Block parent) {
+        if (parent.prevBlockHash.equals(Hash.ZERO)) {
+            return Block.getHash(parent);
+        }
+        return parent.prevBlockHash;
+    }
+
+    /**
+     * Checks that a proposal carries the priority its proposer's stake account
+     * drew in sortition. Its signature, checked on arrival, binds it to that account
+     * @param block - proposal to check
+     * @param proposerStakeHash - hash of the block whose balances give the proposer's stake
+     * @return true if the priority is the one drawn; false otherwise
+     */
+    private static boolean hasDrawnPriority(Block block, Hash proposerStakeHash) {
+        return block.stakeAddress != null && block.priority > 0
+                && block.priority == Sortition.proposerPriority(block.stakeAddress, block.round, proposerStakeHash);
+    }
+
+    /**
+     * Decides whether this client proposes a block in a round. Each staked
+     * account goes through sortition and the one with the best priority proposes
+     * @param round - round of the proposal
+     * @param stakeBlockHash - hash of the committed block whose balances give the stake
+     * @return the proposing account, or null if the client doesn't propose
+     */
+    public static String selectProposer(int round, Hash stakeBlockHash) {
+        String proposer = null;
+        int priority = 0;
+        for (String stakeAddress : ConnectionManager.stakeAddresses) {
+            int drawn = Sortition.proposerPriority(stakeAddress, round, stakeBlockHash);
+            if (drawn > priority) {
+                proposer = stakeAddress;
+                priority = drawn;
+            }
+        }
+        return proposer;
+    }
+
+    /**
+     * Proposes a block of the highest priority pending transactions that don't conflict,
+     * up to the block budget
+     * @param stakeAddress - account proposing
+     * @param stakeBlockHash - hash of the block whose balances give the account's stake
+     * @return the proposed block, or null if none of the pending transactions are valid
+     */
+    public static Block proposeBlock(String stakeAddress, Hash stakeBlockHash) {
+        BlockBuilder builder = new BlockBuilder(Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES);
+        builder.fill(ConnectionManager.mempool, Collections.emptySet());
+        if (builder.size() == 0) {
+            return null;
+        }
+        Hash prevBlockHash = Block.getHash(LedgerManager.getLastBlock());
+        return proposeBlock(builder.getTransactions(), Algorand.round, stakeAddress, stakeBlockHash, prevBlockHash);
+    }
+
+    /**
+     * Builds a block from transactions, signs it with the proposing account's key and proposes it to peers
+     * @return the proposed block
+     */
+    public static Block proposeBlock(Transaction[] transactions, int round, String stakeAddress, Hash stakeBlockHash,
+                                     Hash prevBlockHash) {
+        int priority = Sortition.proposerPriority(stakeAddress, round, stakeBlockHash);
+        Block block = new Block(transactions, round, priority, prevBlockHash, stakeAddress).sign();
+        ConnectionManager.proposalStore.addLocal(block);
+
+        //System.out.println("Proposing block with hash: " + Block.getHash(block));
+        ConnectionManager.gossip(Message.MessageType.BLOCK, block, null);
+        return block;
+    }
+
+    /**
+     * Votes for a block hash in a step with every staked account that
+     * sortition selects for the committee
+     * @param step - step of the vote
+     * @param blockHash - hash to vote for
+     */
+    public static void committeeVote(int step, Hash blockHash) {
         //System.out.println("VOTING IN STEP " + step + ": committeeVote()");
-        // temporarily set to 1000 so always picked. will change
-        int priority = sortition(1000);
-        if (priority > 0) { /* on committee, so vote! */
-            String prevBlockHash = Block.getHash(LedgerManager.getLastBlock());
-            BlockHashMessageData data = new BlockHashMessageData(ConnectionManager.inboundPort, round, step, prevBlockHash, blockHash);
-            ConnectionManager.gossip(Message.MessageType.BLOCK_HASH, data, null);
-            ConnectionManager.blockHashQueue.add(
-                    Message.buildBlockHashMessage(ConnectionManager.inboundPort, ConnectionManager.inboundPort, data));
+        Hash prevBlockHash = ConnectionManager.voteTally.getParent(round);
+        for (String stakeAddress : ConnectionManager.stakeAddresses) {
+            if (Sortition.committeeVotes(stakeAddress, round, step, prevBlockHash) > 0) { /* on committee, so vote! */
+                BlockHashMessageData data = BlockHashMessageData.sign(
+                        ConnectionManager.inboundPort, stakeAddress, round, step, prevBlockHash, blockHash);
+                ConnectionManager.gossip(Message.MessageType.BLOCK_HASH, data, null);
+                CertificateMessageData certificate = ConnectionManager.voteTally.add(data);
+                if (certificate != null) {
+                    ConnectionManager.gossip(Message.MessageType.CERTIFICATE, certificate, null);
+                }
+            }
         }
     }
 
@@ -246,47 +345,76 @@ public class Algorand implements Runnable {
         }
     }
 
+    /**
+     * Outcome of counting the votes of a step. Either a block hash reached
+     * the required majority or the step timed out
+     */
+    static class VoteResult {
+        public static final VoteResult TIMEOUT = new VoteResult(true, null);
+
+        public final boolean timeout;
+        public final Hash blockHash;
+
+        private VoteResult(boolean timeout, Hash blockHash) {
+            this.timeout = timeout;
+            this.blockHash = blockHash;
+        }
+
+        public static VoteResult of(Hash blockHash) {
+            return new VoteResult(false, blockHash);
+        }
+    }
+
+    /**
+     * Runs BA* on a proposal
+     * @param block - highest priority proposal seen, or the empty block
+     * @return the agreed block and whether agreement is final, or null if the client was interrupted
+     */
     public static BAStarResult runBAStar(Block block) {
         //System.out.println("Starting BA*...");
-        String blockHash = reduction(Block.getHash(block));
+        Hash blockHash = reduction(Block.getHash(block));
         //System.out.println("RESULT OF REDUCTION: " + blockHash);
-        String blockHashStar = binaryBAStar(blockHash);
+        Hash blockHashStar = binaryBAStar(blockHash);
         //System.out.println("blockHashStar returned from binaryBASTAR: " + blockHashStar);
-        String r = countVotes(Steps.FINAL, Constants.VOTING_TIMEOUT);
+        VoteResult r = countVotes(Steps.FINAL, Constants.VOTING_TIMEOUT);
         //System.out.println("value of r in runBAStar: " + r);
-        String emptyHash = Block.getHash(Block.getEmptyBlock());
-        if (blockHashStar.compareTo(r) == 0) {
-            if (blockHashStar.compareTo(emptyHash) == 0) {
-                return new BAStarResult(Consensus.FINAL, Block.getEmptyBlock());
-            }
-            return new BAStarResult(Consensus.FINAL, getBlockFromHash(blockHashStar));
-        } else {
-            if (blockHashStar.compareTo(emptyHash) == 0) {
-                return new BAStarResult(Consensus.TENTATIVE, Block.getEmptyBlock());
-            }
-            return new BAStarResult(Consensus.TENTATIVE, getBlockFromHash(blockHashStar));
+        Hash emptyHash = Block.EMPTY_HASH;
+        Consensus consensus = !r.timeout && blockHashStar.equals(r.blockHash) ? Consensus.FINAL : Consensus.TENTATIVE;
+        if (blockHashStar.equals(emptyHash)) {
+            return new BAStarResult(consensus, Block.getEmptyBlock());
         }
+        Block winner = getBlockFromHash(blockHashStar);
+        if (winner == null) {
+            return null;
+        }
+        return new BAStarResult(consensus, winner);
     }
 
     /**
-     * Obtains the winning block from either local storage or the network
+     * Obtains the winning block from either local storage or the network.
+     * No other block may stand in for an agreed hash, so this doesn't give
+     * up: while no peer sends the block the client keeps asking, and also
+     * resyncs its chain in case the block was committed while it fell behind
      * @param blockHash - want to get the block of this hash
-     * @return the requested block
+     * @return the requested block, or null if the client was interrupted
      */
-    private static Block getBlockFromHash(String blockHash) {
-        if (blockProposals.containsKey(blockHash)) {
-            return blockProposals.get(blockHash);
-        } else {
-            ConnectionManager.gossip(Message.MessageType.BLOCK_REQUEST, blockHash, null);
-            while(true) {
-                try {
-                    Block block = ConnectionManager.requestedBlockQueue.take();
-                    if (blockHash.compareTo(Block.getHash(block)) == 0) {
-                        return block;
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    private static Block getBlockFromHash(Hash blockHash) {
+        while (true) {
+            Block block = ConnectionManager.proposalStore.find(blockHash);
+            if (block == null) {
+                block = LedgerManager.getBlock(blockHash);
+            }
+            if (block != null) {
+                return block;
+            }
+            try {
+                return ConnectionManager.blockFetcher.fetch(blockHash).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                System.out.println("Could not fetch winning block: " + e.getCause().getMessage() + ". Resyncing");
+                ConnectionManager.requestBlockChain();
             }
         }
     }
@@ -297,75 +425,41 @@ public class Algorand implements Runnable {
      * @param blockHash - hash to agree on
      * @return agreed  upon hash
      */
-    public static String reduction(String blockHash) {
+    public static Hash reduction(Hash blockHash) {
         // step 1: gossip block hash and get votes
         committeeVote(Steps.REDUCTION_ONE, blockHash);
-        String popularHash = countVotes(Steps.REDUCTION_ONE, Constants.VOTING_TIMEOUT);
+        VoteResult popular = countVotes(Steps.REDUCTION_ONE, Constants.VOTING_TIMEOUT);
         // step 2: re-gossip the popular block hash and get votes
-        String emptyHash = Block.getHash(Block.getEmptyBlock());
-        if (popularHash.compareTo("TIMEOUT") == 0) {
+        Hash emptyHash = Block.EMPTY_HASH;
+        if (popular.timeout) {
             committeeVote(Steps.REDUCTION_TWO, emptyHash);
         } else {
-            committeeVote(Steps.REDUCTION_TWO, popularHash);
+            committeeVote(Steps.REDUCTION_TWO, popular.blockHash);
         }
-        popularHash = countVotes(Steps.REDUCTION_TWO, Constants.VOTING_TIMEOUT);
-        if (popularHash.compareTo("TIMEOUT") == 0) {
+        popular = countVotes(Steps.REDUCTION_TWO, Constants.VOTING_TIMEOUT);
+        if (popular.timeout) {
             return emptyHash;
         }
-        return popularHash;
+        return popular.blockHash;
     }
 
-    public static String countVotes(int step, double timeout) {
-        long start = System.currentTimeMillis();
-        List<Message> futureVotes = new LinkedList<>();
-        Map<String, Integer> votes = new HashMap<>();
-        Set<Integer> voters = new HashSet<>();
-        String result; // a blockHash or TIMEOUT
-        while(true) {
-            try {
-                if (ConnectionManager.blockHashQueue.isEmpty()) {
-                    double elapsedTime = (System.currentTimeMillis() - start);
-                    if (elapsedTime >= timeout) {
-                        result = "TIMEOUT";
-                        break;
-                    }
-                } else {
-                    Message message = ConnectionManager.blockHashQueue.take();
-                    //ProcessMessageObject data = processMessage(message);
-
-                    /* future votes to store for later */
-                    if (message.round > round || (message.round == round && message.step > step)) {
-                        futureVotes.add(message);
-                    /* votes for this round and step */
-                    } else if (message.round == round && message.step == step) {
-                        if (!voters.contains(message.sourceAddress)) {
-                            voters.add(message.sourceAddress);
-                            String blockHash = message.blockHash;
-                            if (votes.containsKey(blockHash)) {
-                                votes.put(blockHash, votes.get(blockHash)+1);
-                            } else {
-                                votes.put(blockHash, 1);
-                            }
-
-                            int majorityVotes = (int) Math.round(Constants.COMMITTEE_SIZE * Constants.COMMITTEE_SIZE_FACTOR);
-                            if (votes.get(blockHash) >= majorityVotes) {
-                                result = blockHash;
-                                break;
-                            }
-                        }
-                    }
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Waits for the votes of a step in the current round
+     * @param step - step to count votes for
+     * @param timeout - milliseconds to wait for a majority
+     * @return the hash that received a majority of votes, or a timeout
+     */
+    public static VoteResult countVotes(int step, double timeout) {
+        try {
+            return ConnectionManager.voteTally.await(round, step, (long) timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return VoteResult.TIMEOUT;
         }
-
-        ConnectionManager.blockHashQueue.addAll(futureVotes);
-        return result;
     }
 
     private static ProcessMessageObject processMessage(Message message) {
-        // verify signature
+        // signature is checked by the SignatureVerifier before a vote is counted
         // see if
         /*String ledgerLastBlockHash = Block.getHash(LedgerManager.getLastBlock());
         if (ledgerLastBlockHash.compareTo(message.prevBlockHash) != 0) {
@@ -379,24 +473,25 @@ public class Algorand implements Runnable {
 
     static class ProcessMessageObject {
         public final int votes;
-        public final String blockHash;
+        public final Hash blockHash;
 
-        ProcessMessageObject(int votes, String blockHash) {
+        ProcessMessageObject(int votes, Hash blockHash) {
             this.votes = votes;
             this.blockHash = blockHash;
         }
     }
 
-    private static String binaryBAStar(String blockHash) {
+    private static Hash binaryBAStar(Hash blockHash) {
         int step = 1;
-        String r = blockHash;
-        String emptyHash = Block.getHash(Block.getEmptyBlock());
+        Hash r = blockHash;
+        Hash emptyHash = Block.EMPTY_HASH;
         while(step < Constants.BA_STAR_MAX_STEPS) {
             committeeVote(step, r);
-            r = countVotes(step, Constants.VOTING_TIMEOUT);
-            if (r.compareTo("TIMEOUT") == 0) {
+            VoteResult result = countVotes(step, Constants.VOTING_TIMEOUT);
+            if (result.timeout) {
                 r = blockHash;
-            } else if (r.compareTo(emptyHash) != 0) {
+            } else if (!result.blockHash.equals(emptyHash)) {
+                r = result.blockHash;
                 /* vote in the next three steps */
                 for (int i = step + 1; i <= (step + 3); i++) {
                     committeeVote(i, r);
@@ -406,14 +501,17 @@ public class Algorand implements Runnable {
                     committeeVote(Steps.FINAL, r);
                 }
                 return r;
+            } else {
+                r = result.blockHash;
             }
             step++;
 
             committeeVote(step, r);
-            r = countVotes(step, Constants.VOTING_TIMEOUT);
-            if (r.compareTo("TIMEOUT") == 0) {
+            result = countVotes(step, Constants.VOTING_TIMEOUT);
+            if (result.timeout) {
                 r = emptyHash;
-            } else if (r.compareTo(emptyHash) == 0) {
+            } else if (result.blockHash.equals(emptyHash)) {
+                r = result.blockHash;
                 for (int i = step; i <= step + 3; i++) {
                     committeeVote(step, r);
                 }
@@ -421,33 +519,34 @@ public class Algorand implements Runnable {
                     committeeVote(step, r);
                 }
                 return r;
+            } else {
+                r = result.blockHash;
             }
             step++;
         }
-        return Block.getHash(Block.getEmptyBlock());
+        return Block.EMPTY_HASH;
     }
 
     /**
-     * Calculates the unique hash of a vote
-     * @param message - message that represents the vote
+     * Calculates the unique hash of a vote. This is what the voter signs
+     * @param message - data of the vote
      * @return hash of the vote
      */
-    public static String getVoteHash(Message message) {
+    public static Hash getVoteHash(BlockHashMessageData message) {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            String voteString =
-                    Integer.toString(message.voter) +
-                    message.round +
-                    Integer.toString(message.step) +
-                    message.prevBlockHash +
-                    message.blockHash;
-            byte[] digest = md.digest(voteString.getBytes());
-            BigInteger i = new BigInteger(1, digest);
-            String hash = i.toString(16);
-            return hash;
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(message.voter);
+            out.writeUTF(message.stakeAddress);
+            out.writeInt(message.round);
+            out.writeInt(message.step);
+            message.prevBlockHash.writeTo(out);
+            message.blockHash.writeTo(out);
+            out.flush();
+            return Hash.sha256(bytes.toByteArray());
+        } catch (IOException e) {
+            /* writing to a byte array never fails */
+            throw new IllegalStateException(e);
         }
-        return null;
     }
 }
@@ -1,80 +1,153 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.util.Date;
 
 /**
- * Represents a block of transactions in the blockchain
+ * Represents a block of transactions in the blockchain. Blocks hold any
+ * number of transactions; the empty block holds none
  */
 public class Block implements Serializable {
+    /**
+     * The single empty block shared by the whole process
+     */
+    private static final Block EMPTY = new Block();
+    /**
+     * Hash of the empty block. Computed once when the class is loaded
+     */
+    public static final Hash EMPTY_HASH = getHash(EMPTY);
+
     public final Transaction[] transactions;
     public final int round;
     public final int priority;
     public final int seed;
     public final Timestamp timestamp;
-    public final String prevBlockHash;
+    public final Hash prevBlockHash;
+    /**
+     * Stake account that won proposer sortition for the block. Null for the
+     * empty and genesis blocks
+     */
+    public final String stakeAddress;
+    /**
+     * Signature over the block hash by the key registered for the proposer's
+     * stake account. Not part of the block's identity
+     */
+    public final byte[] signature;
+    /**
+     * SHA-256 of the canonical encoding. Computed on first use since the block never changes
+     */
+    private transient volatile Hash hash;
 
     /* Empty block constructor */
     private Block() {
-        this.transactions = new Transaction[Constants.BLOCK_SIZE];
-        for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
-            this.transactions[i] = new Transaction(-1, "", "", -1);
-
-        }
+        this.transactions = new Transaction[0];
         this.round = -1;
         this.priority = -1;
         this.seed = -1;
         this.timestamp = null;
-        this.prevBlockHash = "";
+        this.prevBlockHash = Hash.ZERO;
+        this.stakeAddress = null;
+        this.signature = null;
     }
 
-    public Block(Transaction[] transactions, int round, int priority, String prevBlockHash) {
-        this.transactions = new Transaction[Constants.BLOCK_SIZE];
-        for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
-            this.transactions[i] = transactions[i];
-        }
+    public Block(Transaction[] transactions, int round, int priority, Hash prevBlockHash) {
+        this(transactions, round, priority, prevBlockHash, null);
+    }
+
+    public Block(Transaction[] transactions, int round, int priority, Hash prevBlockHash, String stakeAddress) {
+        this.transactions = transactions.clone();
         this.round = round;
         this.priority = priority;
         this.seed = 1;
         this.timestamp = new Timestamp(new Date().getTime());
         this.prevBlockHash = prevBlockHash;
+        this.stakeAddress = stakeAddress;
+        this.signature = null;
+    }
+
+    /* Constructor for a block received from another client */
+    Block(Transaction[] transactions, int round, int priority, int seed, Timestamp timestamp, Hash prevBlockHash,
+          String stakeAddress, byte[] signature) {
+        this.transactions = transactions;
+        this.round = round;
+        this.priority = priority;
+        this.seed = seed;
+        this.timestamp = timestamp;
+        this.prevBlockHash = prevBlockHash;
+        this.stakeAddress = stakeAddress;
+        this.signature = signature;
+    }
+
+    /**
+     * Signs the block with the key of its proposer's stake account
+     * @return copy of the block carrying the signature
+     */
+    public Block sign() {
+        byte[] signature = KeyManager.sign(this.stakeAddress, getHash(this).getBytes());
+        return new Block(this.transactions, this.round, this.priority, this.seed, this.timestamp,
+                this.prevBlockHash, this.stakeAddress, signature);
     }
 
     /**
      * Computes the hash of a block
      * @param block - block to compute hash of
-     * @return hash of the block
+     * @return SHA-256 hash of the block's canonical encoding
      */
-    public static String getHash(Block block) {
+    public static Hash getHash(Block block) {
+        Hash hash = block.hash;
+        if (hash == null) {
+            hash = Hash.sha256(block.toCanonicalBytes());
+            block.hash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Encodes the fields that identify the block: its transactions, round,
+     * priority, previous block hash and proposer. Seed and timestamp are not
+     * part of the identity of a block
+     * @return canonical encoding of the block
+     */
+    public byte[] toCanonicalBytes() {
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            StringBuilder transactionString = new StringBuilder();
-            for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
-                transactionString.append(block.transactions[i].toString());
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(this.transactions.length);
+            for (Transaction tx : this.transactions) {
+                tx.writeTo(out);
             }
-            String blockString =
-                    transactionString.toString() +
-                    Integer.toString(block.round) +
-                    block.priority +
-                    block.prevBlockHash;
-            byte[] digest = md.digest(blockString.getBytes());
-            BigInteger i = new BigInteger(1, digest);
-            String hash = i.toString(16);
-            return hash;
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
+            out.writeInt(this.round);
+            out.writeInt(this.priority);
+            this.prevBlockHash.writeTo(out);
+            out.writeUTF(this.stakeAddress == null ? "" : this.stakeAddress);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            /* writing to a byte array never fails */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Number of bytes taken by the encodings of the block's transactions
+     * @return encoded size of the transactions
+     */
+    public long getTransactionBytes() {
+        long bytes = 0;
+        for (Transaction tx : this.transactions) {
+            bytes += tx.getEncodedSize();
         }
-        return null;
+        return bytes;
     }
 
     /**
      * Retrieves the empty block
-     * @return empty block
+     * @return the shared empty block
      */
     public static Block getEmptyBlock() {
-        return new Block();
+        return EMPTY;
     }
 
     /**
@@ -84,8 +157,8 @@ public class Block implements Serializable {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
-            sb.append(this.transactions[i].toString());
+        for(Transaction tx : this.transactions) {
+            sb.append(tx.toString());
         }
         sb.append("round: " + this.round + "\n");
         sb.append("priority: " + this.priority + "\n");
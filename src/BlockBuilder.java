@@ -0,0 +1,127 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Assembles the transactions of a block proposal. Each candidate is
+ * applied to a scratch copy of the account balances as it is added, so a
+ * transaction that would overdraw its sender given the transactions
+ * already in the block is skipped instead of getting the whole block
+ * rejected. Skipped transactions go back to the mempool; transactions
+ * already in the ledger or in the block are dropped. The proposer
+ * sets the block's budget, in transactions and in encoded bytes, when it
+ * starts building the block
+ */
+public class BlockBuilder {
+    /**
+     * Balances changed by the transactions applied so far, by address.
+     * Accounts not in here still have their ledger balance
+     */
+    private final Map<String, Integer> scratch = new HashMap<>();
+    private final List<Transaction> transactions = new ArrayList<>();
+    private final List<Transaction> skipped = new ArrayList<>();
+    /**
+     * Ids of the transactions added so far and of those in the parent block
+     */
+    private final Set<Integer> ids = new HashSet<>();
+    /**
+     * Most transactions and encoded bytes the block may hold
+     */
+    private final int maxTransactions;
+    private final long maxBytes;
+    /**
+     * Encoded bytes of the transactions added so far
+     */
+    private long bytes = 0;
+    /**
+     * Set once a candidate didn't fit in the remaining byte budget
+     */
+    private boolean full = false;
+
+    /**
+     * Starts a block that extends the last block in the ledger
+     * @param maxTransactions - most transactions the block may hold
+     * @param maxBytes - most encoded bytes of transactions the block may hold
+     */
+    public BlockBuilder(int maxTransactions, long maxBytes) {
+        this.maxTransactions = maxTransactions;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Starts a block that extends a block not yet in the ledger
+     * @param parent - block the new block builds on
+     * @param maxTransactions - most transactions the block may hold
+     * @param maxBytes - most encoded bytes of transactions the block may hold
+     */
+    public BlockBuilder(Block parent, int maxTransactions, long maxBytes) {
+        this(maxTransactions, maxBytes);
+        for (Transaction tx : parent.transactions) {
+            LedgerManager.applyTransaction(tx, scratch);
+            ids.add(tx.id);
+        }
+    }
+
+    /**
+     * Adds a transaction if it fits in the budget and is valid on top of the transactions already added
+     * @param tx - candidate transaction
+     * @return true if added; false if skipped
+     */
+    public boolean add(Transaction tx) {
+        if (LedgerManager.isCommitted(tx.id) || ids.contains(tx.id)) {
+            return false;
+        }
+        int size = tx.getEncodedSize();
+        if (transactions.size() >= maxTransactions || bytes + size > maxBytes) {
+            full = true;
+            skipped.add(tx);
+            return false;
+        }
+        if (LedgerManager.applyTransaction(tx, scratch)) {
+            transactions.add(tx);
+            ids.add(tx.id);
+            bytes += size;
+            return true;
+        }
+        skipped.add(tx);
+        return false;
+    }
+
+    /**
+     * Adds the highest priority pending transactions until the budget is used
+     * up or the mempool runs out. Skipped transactions are returned to the
+     * mempool afterwards, so they aren't taken twice
+     * @param mempool - pool to take transactions from
+     * @param excludedIds - ids of transactions to leave in the pool
+     */
+    public void fill(Mempool mempool, Set<Integer> excludedIds) {
+        while (!full && transactions.size() < maxTransactions) {
+            List<Transaction> candidates = mempool.take(maxTransactions - transactions.size(), excludedIds);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            for (Transaction tx : candidates) {
+                add(tx);
+            }
+        }
+        mempool.addAll(skipped);
+        skipped.clear();
+    }
+
+    /**
+     * @return number of transactions added
+     */
+    public int size() {
+        return transactions.size();
+    }
+
+    /**
+     * @return the transactions added, in the order they were applied
+     */
+    public Transaction[] getTransactions() {
+        return transactions.toArray(new Transaction[0]);
+    }
+}
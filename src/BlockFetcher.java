@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches blocks this client doesn't have from its peers. Each request goes
+ * to a few peers at once and the first response whose hash matches wins.
+ * If none answers before the deadline, other peers are tried, up to a
+ * limit. Later responses for the same block are dropped
+ */
+public class BlockFetcher {
+    /**
+     * State of a block that is being fetched
+     */
+    private static class PendingFetch {
+        final CompletableFuture<Block> future = new CompletableFuture<>();
+        final Set<Integer> askedPeers = new HashSet<>();
+        int attempts = 0;
+    }
+
+    private final Map<Hash, PendingFetch> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Requests a block from peers
+     * @param blockHash - hash of the block
+     * @return future that completes with the block, or fails once every attempt has timed out
+     */
+    public CompletableFuture<Block> fetch(Hash blockHash) {
+        PendingFetch fetch = new PendingFetch();
+        PendingFetch existing = pending.putIfAbsent(blockHash, fetch);
+        if (existing != null) {
+            return existing.future;
+        }
+        request(blockHash, fetch);
+        return fetch.future;
+    }
+
+    /**
+     * Delivers a block received in response to a request
+     * @param block - block sent by a peer
+     */
+    public void onResponse(Block block) {
+        PendingFetch fetch = pending.remove(Block.getHash(block));
+        if (fetch != null) {
+            fetch.future.complete(block);
+        }
+    }
+
+    /**
+     * Sends the next attempt of a fetch to peers that haven't been asked yet
+     * and schedules its deadline
+     */
+    private void request(Hash blockHash, PendingFetch fetch) {
+        List<Integer> peers = new ArrayList<>();
+        synchronized (fetch) {
+            fetch.attempts++;
+            ConnectionManager.knownClientsLock.lock();
+            try {
+                for (int address : ConnectionManager.knownClients) {
+                    if (address != ConnectionManager.inboundPort && !fetch.askedPeers.contains(address)) {
+                        peers.add(address);
+                    }
+                }
+            } finally {
+                ConnectionManager.knownClientsLock.unlock();
+            }
+            if (peers.isEmpty()) {
+                /* every peer has been asked, so start over */
+                fetch.askedPeers.clear();
+                ConnectionManager.knownClientsLock.lock();
+                try {
+                    for (int address : ConnectionManager.knownClients) {
+                        if (address != ConnectionManager.inboundPort) {
+                            peers.add(address);
+                        }
+                    }
+                } finally {
+                    ConnectionManager.knownClientsLock.unlock();
+                }
+            }
+            Collections.shuffle(peers);
+            peers = peers.subList(0, Math.min(Constants.FETCH_FANOUT, peers.size()));
+            fetch.askedPeers.addAll(peers);
+        }
+
+        for (int address : peers) {
+            ConnectionManager.outBoundMessageQueue.add(
+                    Message.buildBlockReqMessage(ConnectionManager.inboundPort, address, blockHash));
+        }
+        timer.schedule(() -> onDeadline(blockHash, fetch), Constants.FETCH_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void onDeadline(Hash blockHash, PendingFetch fetch) {
+        if (fetch.future.isDone()) {
+            return;
+        }
+        if (fetch.attempts >= Constants.FETCH_MAX_ATTEMPTS) {
+            pending.remove(blockHash, fetch);
+            fetch.future.completeExceptionally(
+                    new TimeoutException("No peer sent block " + blockHash + " after " + fetch.attempts + " attempts"));
+            return;
+        }
+        request(blockHash, fetch);
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Holds data specific to a block hash message
+ */
+public class BlockHashMessageData {
+    public final int voter;
+    public final String stakeAddress;
+    public final int round;
+    public final int step;
+    public final Hash prevBlockHash;
+    public final Hash blockHash;
+    /**
+     * Signature over the vote hash by the key registered for the stake account
+     */
+    public final byte[] signature;
+
+    public BlockHashMessageData(int voter, String stakeAddress, int round, int step, Hash prevBlockHash, Hash blockHash,
+                                byte[] signature) {
+        this.voter = voter;
+        this.stakeAddress = stakeAddress;
+        this.round = round;
+        this.step = step;
+        this.prevBlockHash = prevBlockHash;
+        this.blockHash = blockHash;
+        this.signature = signature;
+    }
+
+    /**
+     * Builds a vote signed with the key of one of this client's stake accounts
+     */
+    public static BlockHashMessageData sign(int voter, String stakeAddress, int round, int step,
+                                            Hash prevBlockHash, Hash blockHash) {
+        BlockHashMessageData unsigned = new BlockHashMessageData(
+                voter, stakeAddress, round, step, prevBlockHash, blockHash, null);
+        byte[] signature = KeyManager.sign(stakeAddress, Algorand.getVoteHash(unsigned).getBytes());
+        return new BlockHashMessageData(voter, stakeAddress, round, step, prevBlockHash, blockHash, signature);
+    }
+}
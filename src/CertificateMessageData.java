@@ -0,0 +1,19 @@
+import java.util.List;
+
+/**
+ * Holds data specific to a certificate message: the votes that gave a
+ * block hash the majority in a step
+ */
+public class CertificateMessageData {
+    public final int round;
+    public final int step;
+    public final Hash blockHash;
+    public final List<BlockHashMessageData> votes;
+
+    public CertificateMessageData(int round, int step, Hash blockHash, List<BlockHashMessageData> votes) {
+        this.round = round;
+        this.step = step;
+        this.blockHash = blockHash;
+        this.votes = votes;
+    }
+}
@@ -1,11 +1,13 @@
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 
 public class ClientNode {
     private Thread algorand;
     private boolean connected = false;
 
-    public ClientNode(int inboundPort, int outboundPort) {
-        ConnectionManager.init(inboundPort, outboundPort);
+    public ClientNode(int inboundPort, int outboundPort, List<String> stakeAddresses) {
+        ConnectionManager.init(inboundPort, outboundPort, stakeAddresses);
         startCommandInterface();
     }
 
@@ -14,6 +16,7 @@ public class ClientNode {
      */
     private void connect() {
         LedgerManager.start();
+        KeyManager.start(ConnectionManager.stakeAddresses);
         ConnectionManager.start();
         System.out.println("Starting algorand");
         algorand = new Thread(new Algorand());
@@ -32,7 +35,7 @@ public class ClientNode {
 
     private void startCommandInterface() {
         Scanner sc = new Scanner(System.in);
-        System.out.println("Commands: (send <transaction>) (check <ledger block #>) (disconnect) (quit)");
+        System.out.println("Commands: (send <transaction>) (check <ledger block #>) (peers) (disconnect) (quit)");
         connect();
         while(true) {
             String input = sc.nextLine();
@@ -50,7 +53,9 @@ public class ClientNode {
                         int id = sc2.nextInt();
                         System.out.println("Enter amount to transfer: ");
                         int amount = sc2.nextInt();
-                        ConnectionManager.sendTransaction(id, source, recipient, amount);
+                        System.out.println("Enter fee: ");
+                        int fee = sc2.nextInt();
+                        ConnectionManager.sendTransaction(id, source, recipient, amount, fee);
                     }
                     break;
                 case "check":
@@ -68,6 +73,20 @@ public class ClientNode {
                         }
                     }
                     break;
+                case "peers":
+                    if (!connected) {
+                        System.out.println("Must connect to the network first");
+                    } else {
+                        Map<Integer, Long> dropped = OutboundDataRouter.getDroppedCounts();
+                        for (Map.Entry<Integer, Integer> entry : OutboundDataRouter.getQueueDepths().entrySet()) {
+                            System.out.println("Peer " + entry.getKey() + " queued: " + entry.getValue()
+                                    + " dropped: " + dropped.get(entry.getKey()));
+                        }
+                        System.out.println("Mempool pending: " + ConnectionManager.mempool.size()
+                                + " bytes: " + ConnectionManager.mempool.getBytes()
+                                + " evicted: " + ConnectionManager.mempool.getEvicted());
+                    }
+                    break;
                 case "disconnect":
                     if (!connected) {
                         System.out.println("Client already disconnected");
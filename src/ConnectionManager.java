@@ -1,5 +1,6 @@
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -13,6 +14,10 @@ public class ConnectionManager {
      * Port on which the client sends data to other clients
      */
     protected static int outboundPort;
+    /**
+     * Accounts whose stake this client votes and proposes with
+     */
+    protected static List<String> stakeAddresses = new ArrayList<>();
     /**
      * Set of addresses of other clients that the client is aware of
      */
@@ -29,6 +34,10 @@ public class ConnectionManager {
      * Responsible for accepting incoming data from clients
      */
     private static Thread inboundDataRouter;
+    /**
+     * Responsible for routing received messages to their handlers
+     */
+    private static Thread messageDispatcher;
     /**
      * Responsible for sending data to clients
      */
@@ -37,47 +46,61 @@ public class ConnectionManager {
      * Queue of messages to be sent out to clients
      */
     protected static BlockingQueue<Message> outBoundMessageQueue = new LinkedBlockingQueue<Message>();
+    /**
+     * Queue of messages received from clients, waiting to be dispatched
+     */
+    protected static BlockingQueue<Message> inboundMessageQueue = new LinkedBlockingQueue<>();
     /**
      * Monitored by Algorand. Contains transactions that the node receives
      */
-    protected static BlockingQueue<Transaction> transactionQueue = new LinkedBlockingQueue<>();
+    protected static Mempool mempool = new Mempool();
     /**
-     * Monitored by Algorand. Contains proposed blocks (proposals) received.
+     * Shared by Algorand and the MessageDispatcher. Contains proposed blocks (proposals)
      */
-    protected static BlockingQueue<Block> proposedBlockQueue = new LinkedBlockingQueue<>();
+    protected static ProposalStore proposalStore = new ProposalStore();
     /**
-     * Monitored by Algorand. Contains block hashes (votes) received
+     * Checks the signatures of received votes and proposals before they reach Algorand
      */
-    public static BlockingQueue<Message> blockHashQueue = new LinkedBlockingQueue<>();
+    public static SignatureVerifier signatureVerifier = new SignatureVerifier();
     /**
-     * Monitored by Algorand. Contains requested blocks.
+     * Checks received and locally created transactions before they reach the mempool
      */
-    public static BlockingQueue<Block> requestedBlockQueue = new LinkedBlockingQueue<>();
+    public static TransactionValidator transactionValidator = new TransactionValidator();
+    /**
+     * Monitored by Algorand. Counts block hashes (votes) received
+     */
+    public static VoteTally voteTally = new VoteTally();
+    /**
+     * Used by Algorand. Fetches blocks that this client doesn't have from peers
+     */
+    public static BlockFetcher blockFetcher = new BlockFetcher();
     /**
      * Contains all transactions ever seen by this node. Helps it decide whether or not
      * to gossip a transaction
      */
     public static Set<Integer> transactionsSeen = new HashSet<>();
     /**
-     * Contains all block proposals ever seen by this node. Helps it decide whether or not
-     * to gossip a block proposal.
+     * Contains all block proposals ever seen by this node with a valid signature. Helps it
+     * decide whether or not to gossip a block proposal. Added to by verifier threads
      */
-    public static Set<String> blockProposalsSeen = new HashSet<>();
+    public static Set<Hash> blockProposalsSeen = ConcurrentHashMap.newKeySet();
     /**
-     * Contains all block hash votes ever seen by this node. Helps it decide whether or not
-     * to gossip a block hash vote.
+     * Contains all block hash votes ever seen by this node with a valid signature. Helps it
+     * decide whether or not to gossip a block hash vote. Added to by verifier threads
      */
-    public static Set<String> blockHashVotesSeen = new HashSet<>();
+    public static Set<Hash> blockHashVotesSeen = ConcurrentHashMap.newKeySet();
 
 
     /**
      * Initializes ConnectionManager
      * @param inboundPort - listening port
      * @param outboundPort - data sending port
+     * @param stakeAddresses - accounts whose stake this client participates with
      */
-    public static void init(int inboundPort, int outboundPort) {
+    public static void init(int inboundPort, int outboundPort, List<String> stakeAddresses) {
         ConnectionManager.inboundPort = inboundPort;
         ConnectionManager.outboundPort = outboundPort;
+        ConnectionManager.stakeAddresses = stakeAddresses;
     }
 
     /**
@@ -95,8 +118,10 @@ public class ConnectionManager {
         }
 
         inboundDataRouter = new Thread(new InboundDataRouter());
+        messageDispatcher = new Thread(new MessageDispatcher());
         outboundDataRouter = new Thread(new OutboundDataRouter());
         inboundDataRouter.start();
+        messageDispatcher.start();
         outboundDataRouter.start();
 
         /* make connection to known clients and ask them to
@@ -114,6 +139,7 @@ public class ConnectionManager {
     public static void stop() {
         seedServerRequestor.interrupt();
         inboundDataRouter.interrupt();
+        messageDispatcher.interrupt();
         outboundDataRouter.interrupt();
     }
 
@@ -125,7 +151,7 @@ public class ConnectionManager {
         knownClientsLock.lock();
         try {
             for (int address : knownClients) {
-                Message message = Message.buildBlockChainMessage(inboundPort, address);
+                Message message = Message.buildBlockChainMessage(inboundPort, address, LedgerManager.getLedgerSize());
                 outBoundMessageQueue.add(message);
                 /* wait some amount of time to get back a response*/
                 try {
@@ -149,12 +175,38 @@ public class ConnectionManager {
     }
 
     /**
-     * Send a transaction created from this client
+     * Asks a random peer for its blockchain, to catch up on blocks this client missed
      */
-    public static void sendTransaction(int id ,String source, String recipient, int amount) {
-        Transaction tx = new Transaction(id, source, recipient, amount);
-        gossip(Message.MessageType.TRANSACTION, tx, null);
-        transactionQueue.add(tx);
+    public static void requestBlockChain() {
+        List<Integer> peers = new ArrayList<>();
+        knownClientsLock.lock();
+        try {
+            for (int address : knownClients) {
+                if (address != inboundPort) {
+                    peers.add(address);
+                }
+            }
+        } finally {
+            knownClientsLock.unlock();
+        }
+        if (!peers.isEmpty()) {
+            int address = peers.get(new Random().nextInt(peers.size()));
+            outBoundMessageQueue.add(Message.buildBlockChainMessage(inboundPort, address, LedgerManager.getLedgerSize()));
+        }
+    }
+
+    /**
+     * Send a transaction created from this client. It is only sent if it passes admission
+     */
+    public static void sendTransaction(int id ,String source, String recipient, int amount, int fee) {
+        Transaction tx = new Transaction(id, source, recipient, amount, fee);
+        transactionValidator.admit(tx).thenAccept(admitted -> {
+            if (admitted) {
+                gossip(Message.MessageType.TRANSACTION, tx, null);
+            } else {
+                System.out.println("Transaction " + tx.id + " was rejected");
+            }
+        });
     }
 
     /**
@@ -182,11 +234,15 @@ public class ConnectionManager {
                                     inboundPort, address, (BlockHashMessageData) data);
                             break;
                         case BLOCK_REQUEST:
-                            message = Message.buildBlockReqMessage(inboundPort, address, (String) data);
+                            message = Message.buildBlockReqMessage(inboundPort, address, (Hash) data);
                             break;
                         case TRANSACTION:
                             message = Message.buildTransactionMessage(inboundPort, address, (Transaction) data);
                             break;
+                        case CERTIFICATE:
+                            message = Message.buildCertificateMessage(
+                                    inboundPort, address, (CertificateMessageData) data);
+                            break;
                     }
 
                     if (message != null) {
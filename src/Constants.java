@@ -1,15 +1,34 @@
 public class Constants {
     public static final int BA_STAR_MAX_STEPS = 6;
     /**
-     * Number of transactions per a block
+     * When true, the proposal for the next round is assembled and gossiped
+     * while BA* of the current round is still running
      */
-    public static final int BLOCK_SIZE = 10;
+    public static final boolean PIPELINED_CONSENSUS = false;
     /**
-     * Size of the Algorand committee
+     * Most transactions per a block
      */
-    public static final int COMMITTEE_SIZE = 3;
+    public static final int MAX_BLOCK_TRANSACTIONS = 5000;
     /**
-     * Percentage of the committee needed for a block hash to win a vote
+     * Most bytes of encoded transactions per a block. A proposal is made as soon
+     * as a full block's worth of transactions, by count or by bytes, is pending
+     */
+    public static final int MAX_BLOCK_BYTES = 256 * 1024;
+    /**
+     * Number of accounts funded by the genesis block
+     */
+    public static final int GENESIS_ACCOUNTS = 10;
+    /**
+     * Milliseconds a pending transaction waits before a proposal is made
+     * with however many transactions are pending
+     */
+    public static final int PROPOSAL_MAX_WAIT = 1000;
+    /**
+     * Expected number of sub-users selected by sortition for the committee of a step
+     */
+    public static final int EXPECTED_COMMITTEE_SIZE = 100;
+    /**
+     * Percentage of the expected committee votes needed for a block hash to win a vote
      */
     public static final double COMMITTEE_SIZE_FACTOR = 0.66;
     /**
@@ -25,17 +44,109 @@ public class Constants {
      */
     public static final int INITIAL_SEED  = 0;
     /**
-     * Number of block proposers for a round
+     * Expected number of block proposers selected by sortition for a round
      */
     public static final int NUM_PROPOSERS = 2;
+    /**
+     * Number of clients the genesis accounts are split between when a client
+     * isn't given its stake accounts. Clients whose inbound ports differ modulo
+     * this number stake with disjoint accounts
+     */
+    public static final int DEFAULT_STAKE_CLIENTS = 3;
+    /**
+     * Number of recent blocks whose account balances are kept for sortition
+     */
+    public static final int STAKE_SNAPSHOTS = 16;
+    /**
+     * Directory holding the key file of every stake account
+     */
+    public static final String STAKE_KEY_DIRECTORY = "keys";
     /**
      * Port for the seed server
      */
     public static final int SEED_PORT = 9000;
+    /**
+     * Largest frame, in bytes, that a client will accept from another client
+     */
+    public static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    /**
+     * Most blocks sent in one blockchain response. Full blocks fill about a
+     * quarter of MAX_FRAME_LENGTH, so a page always fits in a frame; longer
+     * chains are sent over several requests
+     */
+    public static final int SYNC_PAGE_BLOCKS = 64;
+    /**
+     * Connections to peers that carry no messages for this many milliseconds are closed
+     */
+    public static final int PEER_IDLE_TIMEOUT = 30000;
+    /**
+     * Milliseconds to wait when opening a connection to a peer
+     */
+    public static final int PEER_CONNECT_TIMEOUT = 1000;
+    /**
+     * Number of messages that can wait for a single peer before the oldest is dropped
+     */
+    public static final int PEER_QUEUE_CAPACITY = 1024;
+    /**
+     * Milliseconds a peer sender waits for more messages to pack into a batch
+     */
+    public static final int BATCH_FLUSH_WINDOW = 2;
+    /**
+     * Largest number of messages packed into a single batch
+     */
+    public static final int BATCH_MAX_MESSAGES = 64;
+    /**
+     * Number of threads that verify vote and proposal signatures
+     */
+    public static final int VERIFIER_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of threads that check received transactions before they are queued and relayed
+     */
+    public static final int VALIDATOR_THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of signature verification results remembered
+     */
+    public static final int SIGNATURE_CACHE_SIZE = 100000;
+    /**
+     * Number of peers asked at once for a missing block
+     */
+    public static final int FETCH_FANOUT = 2;
+    /**
+     * Milliseconds to wait for a missing block before asking other peers
+     */
+    public static final int FETCH_TIMEOUT = 1000;
+    /**
+     * Number of times peers are asked for a missing block before giving up
+     */
+    public static final int FETCH_MAX_ATTEMPTS = 5;
 
     public static final double VOTING_TIMEOUT = 2000;
     /**
-     * Client will wait 5 seconds for proposed blocks
+     * Longest time, in milliseconds, that a client will wait for proposed blocks
      */
     public static final int PROPOSAL_TIMEOUT = 3000;
+    /**
+     * Shortest time, in milliseconds, that a client will wait for proposed blocks
+     */
+    public static final int MIN_PROPOSAL_TIMEOUT = 200;
+    /**
+     * The proposal window is this multiple of the observed proposal arrival latency
+     */
+    public static final int PROPOSAL_TIMEOUT_FACTOR = 2;
+    /**
+     * Percentile of recent proposal arrival latencies used to size the proposal window
+     */
+    public static final double PROPOSAL_LATENCY_PERCENTILE = 0.95;
+    /**
+     * Number of recent proposal arrival latencies kept
+     */
+    public static final int PROPOSAL_LATENCY_SAMPLES = 100;
+    /**
+     * Milliseconds between checks of the transaction queue while waiting to propose
+     */
+    public static final int PROPOSAL_POLL_INTERVAL = 50;
+    /**
+     * Estimated bytes of pending transactions a client holds before evicting the lowest priority ones
+     */
+    public static final long MEMPOOL_MAX_BYTES = 64L * 1024 * 1024;
 }
\ No newline at end of file
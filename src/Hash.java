@@ -0,0 +1,125 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Fixed-size 32 byte SHA-256 hash. Used to identify blocks and votes
+ */
+public final class Hash implements Serializable, Comparable<Hash> {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Number of bytes in a hash
+     */
+    public static final int LENGTH = 32;
+    /**
+     * Hash with every byte set to zero. Used where there is no previous block
+     */
+    public static final Hash ZERO = new Hash(new byte[LENGTH]);
+
+    private final byte[] bytes;
+    private final int hashCode;
+
+    private Hash(byte[] bytes) {
+        this.bytes = bytes;
+        this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Wraps a copy of the supplied bytes
+     * @param bytes - 32 byte hash
+     * @return the hash
+     */
+    public static Hash of(byte[] bytes) {
+        if (bytes.length != LENGTH) {
+            throw new IllegalArgumentException("hash must be " + LENGTH + " bytes, got " + bytes.length);
+        }
+        return new Hash(bytes.clone());
+    }
+
+    /**
+     * Computes the SHA-256 hash of data
+     * @param data - bytes to hash
+     * @return hash of data
+     */
+    public static Hash sha256(byte[] data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return new Hash(md.digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a hash written by writeTo
+     * @param in - stream to read from
+     * @return the hash
+     */
+    public static Hash readFrom(DataInput in) throws IOException {
+        byte[] bytes = new byte[LENGTH];
+        in.readFully(bytes);
+        return new Hash(bytes);
+    }
+
+    /**
+     * Writes the 32 raw bytes of the hash
+     * @param out - stream to write to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.write(this.bytes);
+    }
+
+    /**
+     * Retrieves the raw bytes of the hash
+     * @return copy of the bytes
+     */
+    public byte[] getBytes() {
+        return this.bytes.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Hash)) {
+            return false;
+        }
+        Hash other = (Hash) o;
+        return this.hashCode == other.hashCode && Arrays.equals(this.bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hashCode;
+    }
+
+    /**
+     * Orders hashes by their bytes, read as unsigned big-endian numbers
+     * @param other - hash to compare to
+     * @return negative, zero or positive as this hash is lower, equal or higher
+     */
+    @Override
+    public int compareTo(Hash other) {
+        return Arrays.compareUnsigned(this.bytes, other.bytes);
+    }
+
+    /**
+     * Prints the hash as 64 hex characters
+     * @return hex form of the hash
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(LENGTH * 2);
+        for (byte b : this.bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
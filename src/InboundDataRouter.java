@@ -1,69 +1,53 @@
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 
 /**
  * Responsible for accepting connection
- * requests from other clients and routing incoming
- * messages
+ * requests from other clients and decoding incoming
+ * messages. A single selector multiplexes every peer connection, so a
+ * slow sender never holds up the others. Decoded messages are handed
+ * to the MessageDispatcher through ConnectionManager.inboundMessageQueue
  */
 public class InboundDataRouter implements Runnable {
+    /**
+     * Initial size of the read buffer of a connection. Grows to fit larger
+     * frames and shrinks back once they have been decoded
+     */
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Read state of a single peer connection
+     */
+    private static class FrameReader {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    }
+
     @Override
     public void run() {
-        try {
-            ServerSocket server = new ServerSocket(ConnectionManager.inboundPort);
-            while(true) {
-                Socket connection = server.accept();
-                try {
-                    ObjectInputStream inputStream = new ObjectInputStream(connection.getInputStream());
-                    Message message = (Message) inputStream.readObject();
-                    //System.out.println("INBOUND: " + message.type + " from " + message.sourceAddress);
-                    switch(message.type) {
-                        case GETADDR:
-                            getaddr(message);
-                            break;
-                        case GETADDR_RES:
-                            getaddr_res(message);
-                            break;
-                        case ADDR:
-                            addr(message);
-                            break;
-                        case TRANSACTION:
-                            transaction(message);
-                            break;
-                        case BLOCK:
-                            block(message);
-                            break;
-                        case BLOCK_HASH:
-                            block_hash(message);
-                            break;
-                        case BLOCK_CHAIN:
-                            block_chain(message);
-                            break;
-                        case BLOCK_CHAIN_RES:
-                            block_chain_res(message);
-                            break;
-                        case BLOCK_REQUEST:
-                            block_request(message);
-                            break;
-                        case BLOCK_REQUEST_RES:
-                            block_request_res(message);
-                            break;
+        try (Selector selector = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(ConnectionManager.inboundPort));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            while(!Thread.currentThread().isInterrupted()) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
                     }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                } catch (ClassNotFoundException e) {
-                    e.printStackTrace();
-                } finally {
-                    try {
-                        connection.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
+                    if (key.isAcceptable()) {
+                        accept(server, selector);
+                    } else if (key.isReadable()) {
+                        read(key);
                     }
                 }
             }
@@ -72,164 +56,95 @@ public class InboundDataRouter implements Runnable {
         }
     }
 
-    /**
-     * Prepares a response message with list of this client's known addresses
-     * to send back.
-     * @param message - message received from another client
-     */
-    private void getaddr(Message message) {
-        ConnectionManager.knownClientsLock.lock();
-        try {
-            List<Integer> addresses = new LinkedList<>(ConnectionManager.knownClients);
-            Message response = Message.buildAddrResponseMessage(ConnectionManager.inboundPort, message.sourceAddress, addresses);
-            ConnectionManager.outBoundMessageQueue.add(response);
-        } finally {
-            ConnectionManager.knownClientsLock.unlock();
+    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
         }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new FrameReader());
     }
 
     /**
-     * Merges received address list from message with this client's
-     * known addresses
-     * @param message - message received from another client
+     * Reads whatever is available on a connection and decodes every complete frame
+     * @param key - key of a readable connection
      */
-    private void getaddr_res(Message message) {
-        ConnectionManager.knownClientsLock.lock();
+    private void read(SelectionKey key) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        FrameReader reader = (FrameReader) key.attachment();
         try {
-            ConnectionManager.knownClients.addAll(message.addresses);
-        } finally {
-            ConnectionManager.knownClientsLock.unlock();
-        }
-    }
-
-    /**
-     * Relays the address of the client who sent to message
-     * to all known clients
-     * @param message
-     */
-    private void addr(Message message) {
-        boolean gossip = false;
-        ConnectionManager.knownClientsLock.lock();
-        try {
-            if (!ConnectionManager.knownClients.contains(message.relayAddress)) {
-                ConnectionManager.knownClients.add(message.relayAddress);
-                gossip = true;
+            int read = channel.read(reader.buffer);
+            if (read == -1) {
+                close(key);
+                return;
             }
-        } finally {
-            ConnectionManager.knownClientsLock.unlock();
-        }
-
-        if (gossip) {
-            Set<Integer> excludedAddresses = new HashSet<>();
-            excludedAddresses.add(message.relayAddress);
-            excludedAddresses.add(message.sourceAddress);
-            ConnectionManager.gossip(Message.MessageType.ADDR, message.relayAddress, excludedAddresses);
-        }
-    }
-
-    /**
-     * Process a received address
-     * @param message - message received from another client
-     */
-    private void addr_res(Message message) {
-        System.out.println("Received address");
-        ConnectionManager.knownClientsLock.lock();
-        try {
-            ConnectionManager.knownClients.add(message.relayAddress);
-        } finally {
-            ConnectionManager.knownClientsLock.unlock();
+            decodeFrames(reader);
+        } catch (IOException e) {
+            e.printStackTrace();
+            close(key);
         }
     }
 
     /**
-     * Process a received transaction
-     * @param message - message received from another client
+     * Decodes every complete frame in the buffer and leaves any partial
+     * frame at the start of the buffer for the next read
+     * @param reader - read state of the connection
      */
-    private void transaction(Message message) {
-        Transaction tx = message.transaction;
-        if (!ConnectionManager.transactionsSeen.contains(tx.id)) {
-            ConnectionManager.transactionsSeen.add(tx.id);
-            ConnectionManager.transactionQueue.add(tx);
-            Set<Integer> excludedAddresses = new HashSet<>();
-            excludedAddresses.add(message.sourceAddress);
-            ConnectionManager.gossip(Message.MessageType.TRANSACTION, tx, excludedAddresses);
+    private void decodeFrames(FrameReader reader) throws IOException {
+        ByteBuffer buffer = reader.buffer;
+        buffer.flip();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (length < 2 || length > Constants.MAX_FRAME_LENGTH) {
+                throw new IOException("Invalid frame length: " + length);
+            }
+            if (buffer.remaining() < 4 + length) {
+                if (buffer.capacity() < 4 + length) {
+                    /* frame doesn't fit, so grow the buffer */
+                    ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                    larger.put(buffer);
+                    reader.buffer = larger;
+                    return;
+                }
+                break;
+            }
+            int start = buffer.position() + 4;
+            Message message = MessageCodec.decode(buffer.array(), buffer.arrayOffset() + start, length);
+            buffer.position(start + length);
+            if (message.type == Message.MessageType.BATCH) {
+                ConnectionManager.inboundMessageQueue.addAll(message.batch);
+            } else {
+                ConnectionManager.inboundMessageQueue.add(message);
+            }
         }
-    }
-
-    /**
-     * Process a block proposal message
-     * @param message - message received from another client
-     */
-    private void block(Message message) {
-        String blockHash = Block.getHash(message.block);
-        if (!ConnectionManager.blockProposalsSeen.contains(blockHash)) {
-            ConnectionManager.blockProposalsSeen.add(blockHash);
-            Set<Integer> excludedAddresses = new HashSet<>();
-            excludedAddresses.add(message.sourceAddress);
-            ConnectionManager.gossip(Message.MessageType.BLOCK, message.block, excludedAddresses);
-            ConnectionManager.proposedBlockQueue.add(message.block);
+        if (buffer.capacity() > INITIAL_BUFFER_SIZE && nextFrameSize(buffer) <= INITIAL_BUFFER_SIZE) {
+            /* a large frame is done, so don't keep its buffer for the life of the connection */
+            ByteBuffer smaller = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            smaller.put(buffer);
+            reader.buffer = smaller;
+            return;
         }
+        buffer.compact();
     }
 
     /**
-     * Process a block hash vote message.
-     * @param message
+     * Number of bytes needed to hold the frame at the start of the unread bytes
+     * @param buffer - buffer ready to be read from
+     * @return size of the frame, length prefix included; the unread byte count if its length isn't in yet
      */
-    private void block_hash(Message message) {
-        String voteHash = Algorand.getVoteHash(message);
-        if (!ConnectionManager.blockHashVotesSeen.contains(voteHash)) {
-            ConnectionManager.blockHashVotesSeen.add(voteHash);
-            ConnectionManager.blockHashQueue.add(message);
-
-            Set<Integer> excludedAddresses = new HashSet<>();
-            excludedAddresses.add(message.sourceAddress);
-            excludedAddresses.add(message.voter);
-            BlockHashMessageData data = new BlockHashMessageData(
-                    message.voter, message.round, message.step, message.prevBlockHash, message.blockHash);
-            ConnectionManager.gossip(Message.MessageType.BLOCK_HASH, data, excludedAddresses);
+    private static int nextFrameSize(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return buffer.remaining();
         }
+        return 4 + buffer.getInt(buffer.position());
     }
 
-    private void block_chain(Message message) {
-        List<Block> data = new LinkedList<>(LedgerManager.getLedger());
-        data.remove(0); /* don't need to send genesis */
-        Message response = Message.buildBlockChainResMessage(ConnectionManager.inboundPort, message.sourceAddress, data);
-        ConnectionManager.outBoundMessageQueue.add(response);
-    }
-
-    private void block_chain_res(Message message) {
-        List<Block> data = message.blockchain;
-        LedgerManager.setLedger(data);
-    }
-
-    private void block_request(Message message) {
-        /* check ledger */
-        Block block = LedgerManager.getBlock(message.blockHash);
-        if (block == null) { /* check proposed block queue */
-            Set<Block> notIts = new HashSet<>();
-            while (!ConnectionManager.proposedBlockQueue.isEmpty()) {
-                try {
-                    Block proposedBlock = ConnectionManager.proposedBlockQueue.take();
-                    if (message.blockHash.compareTo(Block.getHash(proposedBlock)) == 0) {
-                        block = proposedBlock;
-                        break;
-                    } else {
-                        notIts.add(proposedBlock);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-            ConnectionManager.proposedBlockQueue.addAll(notIts);
-        }
-
-        if (block != null) {
-            Message response = Message.buildBlockReqResMessage(ConnectionManager.inboundPort, message.sourceAddress, block);
-            ConnectionManager.outBoundMessageQueue.add(response);
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
-
-    private void block_request_res(Message message) {
-        ConnectionManager.requestedBlockQueue.add(message.block);
-    }
-}
\ No newline at end of file
+}
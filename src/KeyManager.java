@@ -0,0 +1,215 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Responsible for this client's Ed25519 signing keys and for checking
+ * signatures made by other clients.
+ *
+ * Proposals and votes are signed with the key of the stake account they
+ * are made for, and are only accepted if that signature checks out
+ * against the key registered for the account. The registered keys are
+ * kept in STAKE_KEY_DIRECTORY, one file per account holding its public
+ * and then its private key. The first client to start creates the files
+ * of the genesis accounts. Every client reads the public keys of all of
+ * them, and the private keys of its own stake accounts only
+ */
+public class KeyManager {
+    private static final String ALGORITHM = "Ed25519";
+    /**
+     * Private keys of this client's stake accounts, by address
+     */
+    private static final Map<String, PrivateKey> stakeKeys = new ConcurrentHashMap<>();
+    /**
+     * X.509 encoding of the public key registered for each stake account, by address
+     */
+    private static final Map<String, byte[]> registeredKeys = new ConcurrentHashMap<>();
+    /**
+     * Public keys of other clients, by their X.509 encoding. Saves decoding a key for every signature
+     */
+    private static final Map<Hash, PublicKey> publicKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Loads the keys of the stake accounts. Must be called after the ledger
+     * has its genesis block
+     * @param stakeAddresses - accounts this client proposes and votes for
+     */
+    public synchronized static void start(List<String> stakeAddresses) {
+        try {
+            List<String> accounts = new ArrayList<>();
+            for (Transaction tx : LedgerManager.getGenesis().transactions) {
+                accounts.add(tx.recipientAddress);
+            }
+            for (String stakeAddress : stakeAddresses) {
+                if (!accounts.contains(stakeAddress)) {
+                    accounts.add(stakeAddress);
+                }
+            }
+            for (String address : accounts) {
+                if (stakeAddresses.contains(address)) {
+                    KeyPair stakeKeyPair = loadStakeKeyPair(address);
+                    registeredKeys.put(address, stakeKeyPair.getPublic().getEncoded());
+                    stakeKeys.put(address, stakeKeyPair.getPrivate());
+                } else {
+                    registeredKeys.put(address, loadPublicKey(address));
+                }
+            }
+        } catch (GeneralSecurityException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Retrieves the public key registered for a stake account
+     * @param stakeAddress - account address
+     * @return X.509 encoding of the key, or null if the account has none
+     */
+    public static byte[] getStakeKey(String stakeAddress) {
+        return registeredKeys.get(stakeAddress);
+    }
+
+    /**
+     * Signs data with the private key of one of this client's stake accounts
+     * @param stakeAddress - account signing
+     * @param data - bytes to sign
+     * @return the signature
+     */
+    public static byte[] sign(String stakeAddress, byte[] data) {
+        PrivateKey key = stakeKeys.get(stakeAddress);
+        if (key == null) {
+            throw new IllegalStateException("No key for stake account " + stakeAddress);
+        }
+        return sign(key, data);
+    }
+
+    private static byte[] sign(PrivateKey key, byte[] data) {
+        try {
+            Signature signature = Signature.getInstance(ALGORITHM);
+            signature.initSign(key);
+            signature.update(data);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Checks a signature
+     * @param publicKey - X.509 encoding of the signer's public key
+     * @param data - bytes that were signed
+     * @param signature - the signature
+     * @return true if the signature is valid; false otherwise
+     */
+    public static boolean verify(byte[] publicKey, byte[] data, byte[] signature) {
+        if (publicKey == null || signature == null) {
+            return false;
+        }
+        try {
+            PublicKey key = publicKeys.get(Hash.sha256(publicKey));
+            if (key == null) {
+                key = KeyFactory.getInstance(ALGORITHM).generatePublic(new X509EncodedKeySpec(publicKey));
+                publicKeys.put(Hash.sha256(publicKey), key);
+            }
+            Signature verifier = Signature.getInstance(ALGORITHM);
+            verifier.initVerify(key);
+            verifier.update(data);
+            return verifier.verify(signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads the key pair of one of this client's stake accounts, creating it if no client has yet
+     * @param address - account address
+     * @return the account's key pair
+     */
+    private static KeyPair loadStakeKeyPair(String address) throws GeneralSecurityException, IOException {
+        return decodeKeyPair(Files.readAllBytes(getKeyFile(address)));
+    }
+
+    /**
+     * Reads the public key of another client's stake account, creating the
+     * account's keys if no client has yet. The private key is left unread
+     * @param address - account address
+     * @return X.509 encoding of the account's public key
+     */
+    private static byte[] loadPublicKey(String address) throws GeneralSecurityException, IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(getKeyFile(address)))) {
+            byte[] publicKey = new byte[in.readUnsignedShort()];
+            in.readFully(publicKey);
+            /* check that it decodes */
+            KeyFactory.getInstance(ALGORITHM).generatePublic(new X509EncodedKeySpec(publicKey));
+            return publicKey;
+        }
+    }
+
+    /**
+     * Finds the key file of a stake account, creating it if no client has yet.
+     * A new key file is linked into place atomically, so clients starting at
+     * the same time all end up with the same keys
+     * @param address - account address
+     * @return path of the key file
+     */
+    private static Path getKeyFile(String address) throws GeneralSecurityException, IOException {
+        Path directory = Paths.get(Constants.STAKE_KEY_DIRECTORY);
+        Path file = directory.resolve(address + ".key");
+        if (!Files.exists(file)) {
+            Files.createDirectories(directory);
+            KeyPair generated = KeyPairGenerator.getInstance(ALGORITHM).generateKeyPair();
+            Path temp = Files.createTempFile(directory, address, ".tmp");
+            try {
+                Files.write(temp, encodeKeyPair(generated));
+                Files.createLink(file, temp);
+            } catch (FileAlreadyExistsException e) {
+                /* another client created it first */
+            } finally {
+                Files.delete(temp);
+            }
+        }
+        return file;
+    }
+
+    private static byte[] encodeKeyPair(KeyPair pair) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        byte[] publicKey = pair.getPublic().getEncoded();
+        byte[] privateKey = pair.getPrivate().getEncoded();
+        out.writeShort(publicKey.length);
+        out.write(publicKey);
+        out.writeShort(privateKey.length);
+        out.write(privateKey);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static KeyPair decodeKeyPair(byte[] encoded) throws GeneralSecurityException, IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        byte[] publicKey = new byte[in.readUnsignedShort()];
+        in.readFully(publicKey);
+        byte[] privateKey = new byte[in.readUnsignedShort()];
+        in.readFully(privateKey);
+        KeyFactory factory = KeyFactory.getInstance(ALGORITHM);
+        return new KeyPair(factory.generatePublic(new X509EncodedKeySpec(publicKey)),
+                factory.generatePrivate(new PKCS8EncodedKeySpec(privateKey)));
+    }
+}
@@ -1,7 +1,11 @@
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -14,9 +18,37 @@ public class LedgerManager {
      */
     private static Block genesis;
     /**
-     * The actual ledger
+     * The actual ledger. Indexed by height
      */
-    private static LinkedList<Block> ledger = new LinkedList<>();
+    private static ArrayList<Block> ledger = new ArrayList<>();
+    /**
+     * Maps the hash of every block in the ledger to its height
+     */
+    private static Map<Hash, Integer> heightsByHash = new HashMap<>();
+    /**
+     * Balance of every account that appears in the ledger. Updated as blocks
+     * are appended so that lookups never have to walk the chain. Read without
+     * taking the ledger's lock, so transaction admission doesn't wait on commits
+     */
+    private static Map<String, Integer> balances = new ConcurrentHashMap<>();
+    /**
+     * Ids of every transaction in the ledger. Read without taking the ledger's lock
+     */
+    private static Set<Integer> committedIds = ConcurrentHashMap.newKeySet();
+    /**
+     * Balance changes made by each of the most recent blocks, by block hash,
+     * oldest first. Sortition weighs a vote by the balances of the block it
+     * builds on, so every client gives it the same weight whatever it has
+     * committed since. The balances after a recent block are the current
+     * balances minus the changes of the blocks after it
+     */
+    private static LinkedHashMap<Hash, Map<String, Integer>> recentChanges =
+            new LinkedHashMap<Hash, Map<String, Integer>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Hash, Map<String, Integer>> eldest) {
+                    return size() > Constants.STAKE_SNAPSHOTS;
+                }
+            };
     /**
      * Read and write lock for the ledger
      */
@@ -27,42 +59,123 @@ public class LedgerManager {
      */
     public synchronized static void start() {
         genesis = buildGenesis();
-        ledger.add(genesis);
+        appendBlock(genesis);
         System.out.print("after just adding genesis in start(): " + ledger.size());
     }
 
     public synchronized static Block buildGenesis() {
-        Transaction[] transactions = new Transaction[Constants.BLOCK_SIZE];
-        for(int i = 0; i < Constants.BLOCK_SIZE; i++) {
+        Transaction[] transactions = new Transaction[Constants.GENESIS_ACCOUNTS];
+        for(int i = 0; i < Constants.GENESIS_ACCOUNTS; i++) {
             String recipient = "address" + i;
             transactions[i] = new Transaction(
                     i, "genesis", recipient,
-                    Constants.CURRENCY_SUPPLY / Constants.BLOCK_SIZE);
+                    Constants.CURRENCY_SUPPLY / Constants.GENESIS_ACCOUNTS);
         }
-        return new Block(transactions, -1, -1, "");
+        return new Block(transactions, -1, -1, Hash.ZERO);
     }
 
     /**
-     * Check the ledger and see if a transaction is valid
-     * @param tx - transaction to validate
-     * @return true if valid; false otherwise
+     * Checks a transaction against balances that include earlier transactions
+     * of the same block and, if it's valid, applies it to those balances
+     * @param tx - transaction to check
+     * @param scratch - balances changed by earlier transactions, by address.
+     *                Accounts not in here are read from the ledger
+     * @return true if valid and applied; false otherwise
      */
-    public synchronized static boolean validateTransaction(Transaction tx) {
-        int balance = 0;
-        for(Block block : ledger) {
-            for(Transaction blockTx : block.transactions) {
-                if (tx.senderAddress.compareTo(blockTx.recipientAddress) == 0) {
-                    balance += blockTx.amount;
-                } else if (tx.senderAddress.compareTo(blockTx.senderAddress) == 0) {
-                    balance -= blockTx.amount;
-                }
+    public static boolean applyTransaction(Transaction tx, Map<String, Integer> scratch) {
+        if (!TransactionValidator.isWellFormed(tx)) {
+            return false;
+        }
+        int senderBalance = scratch.containsKey(tx.senderAddress)
+                ? scratch.get(tx.senderAddress) : getBalance(tx.senderAddress);
+        if (senderBalance < tx.amount) {
+            return false;
+        }
+        if (tx.senderAddress.equals(tx.recipientAddress)) {
+            return true;
+        }
+        int recipientBalance = scratch.containsKey(tx.recipientAddress)
+                ? scratch.get(tx.recipientAddress) : getBalance(tx.recipientAddress);
+        scratch.put(tx.senderAddress, senderBalance - tx.amount);
+        scratch.put(tx.recipientAddress, recipientBalance + tx.amount);
+        return true;
+    }
+
+    /**
+     * Retrieves the balance of an account as of the most recent block. Doesn't
+     * take the ledger's lock; while a block is being appended the balance may
+     * already include some of its transactions
+     * @param address - account address
+     * @return balance of the account; 0 if it has never appeared in the ledger
+     */
+    public static int getBalance(String address) {
+        Integer balance = balances.get(address);
+        if (balance == null) {
+            return 0;
+        }
+        return balance;
+    }
+
+    /**
+     * Retrieves the balance of an account as of a recent block
+     * @param address - account address
+     * @param blockHash - hash of the block
+     * @return balance of the account after the block; 0 if the block isn't one of the recent blocks
+     */
+    public synchronized static int getStake(String address, Hash blockHash) {
+        if (!recentChanges.containsKey(blockHash)) {
+            return 0;
+        }
+        int stake = getBalance(address);
+        boolean later = false;
+        for (Map.Entry<Hash, Map<String, Integer>> changes : recentChanges.entrySet()) {
+            if (later) {
+                stake -= changes.getValue().getOrDefault(address, 0);
+            } else if (changes.getKey().equals(blockHash)) {
+                later = true;
             }
         }
+        return stake;
+    }
 
-        if (balance >= tx.amount) {
-            return true;
+    /**
+     * Checks whether a transaction has been committed
+     * @param id - id of the transaction
+     * @return true if a block in the ledger contains it; false otherwise
+     */
+    public static boolean isCommitted(int id) {
+        return committedIds.contains(id);
+    }
+
+    /**
+     * Appends a block to the ledger and updates the hash index and account balances
+     * @param block - block to append
+     */
+    private static void appendBlock(Block block) {
+        heightsByHash.put(Block.getHash(block), ledger.size());
+        ledger.add(block);
+        recentChanges.put(Block.getHash(block), applyBlock(block));
+    }
+
+    /**
+     * Applies the transactions of a newly appended block to the account balances
+     * @param block - block that was just appended to the ledger
+     * @return change in balance of each account the block touched, by address
+     */
+    private static Map<String, Integer> applyBlock(Block block) {
+        Map<String, Integer> changes = new HashMap<>();
+        for(Transaction tx : block.transactions) {
+            /* a self transfer moves no funds but is still committed */
+            committedIds.add(tx.id);
+            if (tx.senderAddress.compareTo(tx.recipientAddress) == 0) {
+                continue;
+            }
+            balances.merge(tx.recipientAddress, tx.amount, Integer::sum);
+            balances.merge(tx.senderAddress, -tx.amount, Integer::sum);
+            changes.merge(tx.recipientAddress, tx.amount, Integer::sum);
+            changes.merge(tx.senderAddress, -tx.amount, Integer::sum);
         }
-        return false;
+        return changes;
     }
 
     /**
@@ -70,19 +183,33 @@ public class LedgerManager {
      * @param block - block to add to the ledger
      */
     public synchronized static boolean addBlock(Block block) {
-        if (block.prevBlockHash.compareTo(Block.getHash(getLastBlock())) != 0) {
+        if (!block.prevBlockHash.equals(Block.getHash(getLastBlock()))) {
             System.out.println("Prevs don't match up");
             return false;
         }
 
+        if (!validateBlock(block)) {
+            System.out.println("Block is over budget");
+            return false;
+        }
+
+        /* each transaction is checked on top of the ones before it in the block */
+        Map<String, Integer> scratch = new HashMap<>();
+        Set<Integer> ids = new HashSet<>();
         for(Transaction tx : block.transactions) {
-            if (!validateTransaction(tx)) {
+            if (committedIds.contains(tx.id) || !ids.add(tx.id)) {
+                System.out.println("A transaction is already committed or repeated");
+                return false;
+            }
+            if (!applyTransaction(tx, scratch)) {
                 System.out.println("A transaction is invalid");
                 return false;
             }
         }
 
-        ledger.add(block);
+        appendBlock(block);
+        /* the block's transactions are no longer pending */
+        ConnectionManager.mempool.removeAll(block.transactions);
         return true;
         /*
         ledgerLock.lock();
@@ -105,8 +232,14 @@ public class LedgerManager {
         }*/
     }
 
-    public synchronized static boolean validateBlock(Block block) {
-        return true;
+    /**
+     * Checks that a block fits the block budget
+     * @param block - block to check
+     * @return true if within MAX_BLOCK_TRANSACTIONS and MAX_BLOCK_BYTES; false otherwise
+     */
+    public static boolean validateBlock(Block block) {
+        return block.transactions.length <= Constants.MAX_BLOCK_TRANSACTIONS
+                && block.getTransactionBytes() <= Constants.MAX_BLOCK_BYTES;
     }
 
     /**
@@ -123,13 +256,12 @@ public class LedgerManager {
      * @param blockHash
      * @return requested block
      */
-    public synchronized static Block getBlock(String blockHash) {
-        for(Block block : ledger) {
-            if (blockHash.compareTo(Block.getHash(block)) == 0) {
-                return block;
-            }
+    public synchronized static Block getBlock(Hash blockHash) {
+        Integer height = heightsByHash.get(blockHash);
+        if (height == null) {
+            return null;
         }
-        return null;
+        return ledger.get(height);
     }
 
     /**
@@ -165,11 +297,19 @@ public class LedgerManager {
         } finally {
             ledgerLock.unlock();
         }*/
-        return ledger.getLast();
+        return ledger.get(ledger.size() - 1);
     }
 
+    /**
+     * Adds blocks received from a peer. Blocks already in the ledger are skipped
+     * @param data - consecutive blocks
+     * @return true if every block was added or already present; false otherwise
+     */
     public synchronized static boolean setLedger(List<Block> data) {
         for(Block block : data) {
+            if (heightsByHash.containsKey(Block.getHash(block))) {
+                continue;
+            }
             if (!addBlock(block)) {
                 return false;
             }
@@ -178,11 +318,15 @@ public class LedgerManager {
     }
 
     /**
-     * Obtains the entire ledger
-     * @return the ledger
+     * Obtains a copy of consecutive blocks of the ledger
+     * @param fromHeight - height of the first block
+     * @param count - most blocks to return
+     * @return the blocks, empty if the ledger isn't that long
      */
-    public synchronized static List<Block> getLedger() {
-        return ledger;
+    public synchronized static List<Block> getBlocks(int fromHeight, int count) {
+        int from = Math.min(Math.max(fromHeight, 0), ledger.size());
+        int to = Math.min(from + count, ledger.size());
+        return new ArrayList<>(ledger.subList(from, to));
     }
 
     public synchronized static int getLedgerSize() {
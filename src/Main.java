@@ -1,3 +1,7 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class Main {
     /*
     public static String adjustTo64(String s) {
@@ -20,7 +24,22 @@ public class Main {
         if (args[0].compareTo("seedserver") == 0) {
             DNSSeedNode seedNode = new DNSSeedNode(Constants.SEED_PORT);
         } else if (args[0].compareTo("client") == 0) {
-            ClientNode client = new ClientNode(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            /* optional comma separated list of the accounts the client stakes with.
+               Defaults to this client's share of the genesis accounts, picked by
+               inbound port so that clients on consecutive ports don't overlap */
+            int inboundPort = Integer.parseInt(args[1]);
+            List<String> stakeAddresses = new ArrayList<>();
+            if (args.length > 3) {
+                stakeAddresses.addAll(Arrays.asList(args[3].split(",")));
+            } else {
+                Transaction[] genesis = LedgerManager.buildGenesis().transactions;
+                for (int i = 0; i < genesis.length; i++) {
+                    if (i % Constants.DEFAULT_STAKE_CLIENTS == inboundPort % Constants.DEFAULT_STAKE_CLIENTS) {
+                        stakeAddresses.add(genesis[i].recipientAddress);
+                    }
+                }
+            }
+            ClientNode client = new ClientNode(inboundPort, Integer.parseInt(args[2]), stakeAddresses);
         } else if (args[0].compareTo("tester") == 0) {
             Tester tester = new Tester();
         }
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Pending transactions waiting to be proposed. Shared by Algorand, the
+ * MessageDispatcher and the client's own sends. Transactions are indexed by
+ * id and by sender, and taken in priority order: highest fee first, then
+ * lowest id. The pool is capped at an estimated number of bytes; when a new
+ * transaction pushes it over the cap, the lowest priority transactions are
+ * evicted. Arrival times are kept so that a proposal can be triggered once
+ * the oldest transaction has waited long enough. Transactions already in
+ * the ledger are never added. The ledger records a block's transactions as
+ * committed before it removes them from the pool, so a transaction
+ * admitted while its block is being committed is still removed
+ */
+public class Mempool {
+    /**
+     * Estimated bytes held by the indexes for each transaction, on top of its encoding
+     */
+    private static final int ENTRY_OVERHEAD = 160;
+    /**
+     * Most arrival times kept for transactions taken out of the pool. Enough
+     * for the blocks being built or proposed at any one time
+     */
+    private static final int TAKEN_ARRIVALS = 4 * Constants.MAX_BLOCK_TRANSACTIONS;
+
+    /**
+     * Highest fee first. Ties go to the lowest id, which is usually the oldest
+     */
+    private static final Comparator<Transaction> PRIORITY_ORDER =
+            Comparator.comparingInt((Transaction tx) -> -tx.fee).thenComparingInt(tx -> tx.id);
+
+    /**
+     * Pending transactions by id
+     */
+    private final Map<Integer, Transaction> byId = new HashMap<>();
+    /**
+     * Pending transactions of each sender, in priority order
+     */
+    private final Map<String, NavigableSet<Transaction>> bySender = new HashMap<>();
+    /**
+     * Total amount spent by the pending transactions of each sender
+     */
+    private final Map<String, Long> pendingSpend = new HashMap<>();
+    /**
+     * Every pending transaction in priority order
+     */
+    private final NavigableSet<Transaction> byPriority = new TreeSet<>(PRIORITY_ORDER);
+    /**
+     * Time each pending transaction first entered the pool, by id
+     */
+    private final Map<Integer, Long> arrivals = new HashMap<>();
+    /**
+     * Every pending transaction, oldest arrival first
+     */
+    private final NavigableSet<Transaction> byArrival = new TreeSet<>(
+            Comparator.comparingLong((Transaction tx) -> arrivals.get(tx.id)).thenComparingInt(tx -> tx.id));
+    /**
+     * Arrival times of transactions taken out for a block, by id, so a
+     * transaction that is returned keeps its place and its wait so far
+     * still counts towards PROPOSAL_MAX_WAIT
+     */
+    private final Map<Integer, Long> takenArrivals = new LinkedHashMap<Integer, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            return size() > TAKEN_ARRIVALS;
+        }
+    };
+    /**
+     * Estimated bytes used by the pending transactions
+     */
+    private long bytes = 0;
+    /**
+     * Encoded bytes of the pending transactions, as they would take up in a block
+     */
+    private long encodedBytes = 0;
+    /**
+     * Transactions evicted or refused because the pool was full
+     */
+    private long evicted = 0;
+
+    /**
+     * Adds a transaction. If the pool goes over its cap, the lowest priority
+     * transactions are evicted, which may be the one just added
+     * @param tx - transaction to add
+     * @return true if the transaction is in the pool; false if it was already there or didn't fit
+     */
+    public synchronized boolean add(Transaction tx) {
+        if (!insert(tx, System.currentTimeMillis())) {
+            return false;
+        }
+        evictOverflow();
+        return byId.get(tx.id) == tx;
+    }
+
+    /**
+     * Adds a transaction if its sender's balance covers it on top of the
+     * sender's other pending transactions. Checked and added atomically, so
+     * concurrent admissions can't overdraw an account between them
+     * @param tx - transaction to add
+     * @param balance - sender's balance in the ledger
+     * @return true if the transaction is in the pool; false if it was refused
+     */
+    public synchronized boolean addIfFunded(Transaction tx, int balance) {
+        if (balance - getPendingSpend(tx.senderAddress) < tx.amount) {
+            return false;
+        }
+        return add(tx);
+    }
+
+    /**
+     * Total amount spent by the pending transactions of a sender
+     * @param senderAddress - sending account
+     * @return amount the sender's pending transactions spend
+     */
+    private long getPendingSpend(String senderAddress) {
+        return pendingSpend.getOrDefault(senderAddress, 0L);
+    }
+
+    /**
+     * Returns transactions to the pool, e.g. from a proposal that was
+     * abandoned. They keep the arrival time they had when they were taken
+     * @param transactions - transactions to add
+     */
+    public synchronized void addAll(Collection<Transaction> transactions) {
+        long now = System.currentTimeMillis();
+        for (Transaction tx : transactions) {
+            Long arrival = takenArrivals.remove(tx.id);
+            insert(tx, arrival == null ? now : arrival);
+        }
+        evictOverflow();
+    }
+
+    /**
+     * Removes and returns the highest priority transactions
+     * @param count - most transactions to take
+     * @param excludedIds - ids of transactions to leave in the pool
+     * @return the transactions, highest priority first
+     */
+    public synchronized List<Transaction> take(int count, Set<Integer> excludedIds) {
+        List<Transaction> taken = new ArrayList<>(Math.min(count, byId.size()));
+        for (Transaction tx : byPriority) {
+            if (taken.size() == count) {
+                break;
+            }
+            if (!excludedIds.contains(tx.id)) {
+                taken.add(tx);
+            }
+        }
+        for (Transaction tx : taken) {
+            takenArrivals.put(tx.id, arrivals.get(tx.id));
+            remove(tx);
+        }
+        return taken;
+    }
+
+    /**
+     * Removes the transactions of a committed block. Takes time proportional
+     * to the block's size, not the pool's
+     * @param transactions - transactions of the block
+     * @return number of transactions that were pending
+     */
+    public synchronized int removeAll(Transaction[] transactions) {
+        int removed = 0;
+        for (Transaction tx : transactions) {
+            takenArrivals.remove(tx.id);
+            Transaction pending = byId.get(tx.id);
+            if (pending != null) {
+                remove(pending);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks whether a proposal should be made: either enough transactions
+     * are pending to fill a block, or the oldest one has waited too long
+     * @param maxTransactions - number of pending transactions that triggers a proposal
+     * @param maxBytes - encoded bytes of pending transactions that trigger a proposal
+     * @param maxWait - milliseconds a transaction may wait before it triggers a proposal
+     * @return true if a proposal should be made; false otherwise
+     */
+    public synchronized boolean isReady(int maxTransactions, long maxBytes, long maxWait) {
+        if (byId.size() >= maxTransactions || encodedBytes >= maxBytes) {
+            return true;
+        }
+        if (byArrival.isEmpty()) {
+            return false;
+        }
+        long oldest = arrivals.get(byArrival.first().id);
+        return System.currentTimeMillis() - oldest >= maxWait;
+    }
+
+    /**
+     * @return number of pending transactions
+     */
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    /**
+     * @return estimated bytes used by the pending transactions
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of transactions evicted or refused because the pool was full
+     */
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    private boolean insert(Transaction tx, long arrival) {
+        if (LedgerManager.isCommitted(tx.id) || byId.putIfAbsent(tx.id, tx) != null) {
+            return false;
+        }
+        bySender.computeIfAbsent(tx.senderAddress, s -> new TreeSet<>(PRIORITY_ORDER)).add(tx);
+        pendingSpend.merge(tx.senderAddress, (long) tx.amount, Long::sum);
+        byPriority.add(tx);
+        arrivals.put(tx.id, arrival);
+        byArrival.add(tx);
+        bytes += sizeOf(tx);
+        encodedBytes += tx.getEncodedSize();
+        return true;
+    }
+
+    private void remove(Transaction tx) {
+        byId.remove(tx.id);
+        NavigableSet<Transaction> pending = bySender.get(tx.senderAddress);
+        pending.remove(tx);
+        if (pending.isEmpty()) {
+            bySender.remove(tx.senderAddress);
+            pendingSpend.remove(tx.senderAddress);
+        } else {
+            pendingSpend.merge(tx.senderAddress, (long) -tx.amount, Long::sum);
+        }
+        byPriority.remove(tx);
+        /* the arrival order reads the arrival time, so it goes first */
+        byArrival.remove(tx);
+        arrivals.remove(tx.id);
+        bytes -= sizeOf(tx);
+        encodedBytes -= tx.getEncodedSize();
+    }
+
+    /**
+     * Evicts the lowest priority transactions until the pool is back under its cap
+     */
+    private void evictOverflow() {
+        while (bytes > Constants.MEMPOOL_MAX_BYTES && !byPriority.isEmpty()) {
+            remove(byPriority.last());
+            evicted++;
+        }
+    }
+
+    private static long sizeOf(Transaction tx) {
+        return tx.getEncodedSize() + ENTRY_OVERHEAD;
+    }
+}
@@ -1,26 +1,6 @@
 import java.io.Serializable;
 import java.util.List;
 
-/**
- * Holds data specific to a block hash message
- */
-class BlockHashMessageData {
-    public final int voter;
-    public final int round;
-    public final int step;
-    public final String prevBlockHash;
-    public final String blockHash;
-
-    public BlockHashMessageData(int voter, int round, int step, String prevBlockHash, String blockHash) {
-        this.voter = voter;
-        this.round = round;
-        this.step = step;
-        this.prevBlockHash = prevBlockHash;
-        this.blockHash = blockHash;
-    }
-}
-
-
 public class Message implements Serializable {
     /**
      * Types of messages
@@ -65,7 +45,15 @@ public class Message implements Serializable {
         /**
          * Response to request for a specific block
          */
-        BLOCK_REQUEST_RES
+        BLOCK_REQUEST_RES,
+        /**
+         * Several messages to the same client packed into one frame
+         */
+        BATCH,
+        /**
+         * Transmission of the votes that decided a step
+         */
+        CERTIFICATE
     }
     /**
      * The type of the message being sent.
@@ -100,15 +88,23 @@ public class Message implements Serializable {
     /**
      * Hash of a block
      */
-    public String blockHash = null;
+    public Hash blockHash = null;
     /**
      * Hash of previous block in the chain
      */
-    public String prevBlockHash = null;
+    public Hash prevBlockHash = null;
     /**
      * Origin address of vote
      */
     public int voter;
+    /**
+     * Account whose stake backs the vote
+     */
+    public String stakeAddress = null;
+    /**
+     * Signature of the vote
+     */
+    public byte[] signature = null;
     /**
      * Round of the message
      */
@@ -117,10 +113,22 @@ public class Message implements Serializable {
      * Step of the message
      */
     public int step;
+    /**
+     * Height of the first block requested from a peer's blockchain
+     */
+    public int height;
     /**
      * Blockchain to send
      */
     List<Block> blockchain = null;
+    /**
+     * Messages carried by a batch
+     */
+    List<Message> batch = null;
+    /**
+     * Certificate to send
+     */
+    CertificateMessageData certificate = null;
 
     private Message(MessageType type, int sourceAddress, int destinationAddress) {
         this.type = type;
@@ -161,15 +169,18 @@ public class Message implements Serializable {
     public static Message buildBlockHashMessage(int sourceAddress, int destinationAddress, BlockHashMessageData data) {
         Message message = new Message(MessageType.BLOCK_HASH, sourceAddress, destinationAddress);
         message.voter = data.voter;
+        message.stakeAddress = data.stakeAddress;
         message.round = data.round;
         message.step = data.step;
         message.prevBlockHash = data.prevBlockHash;
         message.blockHash = data.blockHash;
+        message.signature = data.signature;
         return message;
     }
 
-    public static Message buildBlockChainMessage(int sourceAddress, int destinationAddress) {
+    public static Message buildBlockChainMessage(int sourceAddress, int destinationAddress, int height) {
         Message message = new Message(MessageType.BLOCK_CHAIN, sourceAddress, destinationAddress);
+        message.height = height;
         return message;
     }
 
@@ -179,7 +190,7 @@ public class Message implements Serializable {
         return message;
     }
 
-    public static Message buildBlockReqMessage(int sourceAddress, int destinationAddress, String blockHash) {
+    public static Message buildBlockReqMessage(int sourceAddress, int destinationAddress, Hash blockHash) {
         Message message = new Message(MessageType.BLOCK_REQUEST, sourceAddress, destinationAddress);
         message.blockHash = blockHash;
         return message;
@@ -190,4 +201,19 @@ public class Message implements Serializable {
         message.block = block;
         return message;
     }
+
+    public static Message buildBatchMessage(int sourceAddress, int destinationAddress, List<Message> messages) {
+        Message message = new Message(MessageType.BATCH, sourceAddress, destinationAddress);
+        message.batch = messages;
+        return message;
+    }
+
+    public static Message buildCertificateMessage(int sourceAddress, int destinationAddress, CertificateMessageData data) {
+        Message message = new Message(MessageType.CERTIFICATE, sourceAddress, destinationAddress);
+        message.round = data.round;
+        message.step = data.step;
+        message.blockHash = data.blockHash;
+        message.certificate = data;
+        return message;
+    }
 }
\ No newline at end of file
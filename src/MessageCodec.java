@@ -0,0 +1,328 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary wire format for messages sent between clients.
+ *
+ * Every message travels in a frame:
+ *   int  length of the rest of the frame
+ *   byte protocol version
+ *   byte message type (ordinal of Message.MessageType, so new types must be appended)
+ *   int  source address
+ *   int  destination address
+ *   ...  fields used by the message type
+ *
+ * A batch carries a count followed by the type tag and fields of each
+ * message it packs. The packed messages share the addresses of the batch.
+ * A certificate carries its round, step and block hash once, followed by
+ * the voter, account and previous block hash of each vote
+ */
+public class MessageCodec {
+    /**
+     * Version of the wire format. Bumped whenever the layout of a message
+     * changes. Frames of any other version are rejected
+     */
+    public static final byte PROTOCOL_VERSION = 7;
+
+    /**
+     * Fewest bytes each kind of element can be encoded in. Counts read from a
+     * frame are checked against the bytes left, so a small frame can't make
+     * the receiver allocate room for millions of elements
+     */
+    private static final int MIN_ADDRESS_BYTES = 4;
+    private static final int MIN_TRANSACTION_BYTES = 4 + 2 + 2 + 4 + 4;
+    private static final int MIN_BLOCK_BYTES = 4 + 4 + 4 + 4 + 8 + Hash.LENGTH + 2 + 2;
+    private static final int MIN_VOTE_BYTES = 4 + 2 + Hash.LENGTH + 2;
+    private static final int MIN_PACKED_MESSAGE_BYTES = 1;
+
+    private static final Message.MessageType[] TYPES = Message.MessageType.values();
+
+    /**
+     * Encodes a message into a complete frame, length prefix included
+     * @param message - message to encode
+     * @return the frame
+     */
+    public static byte[] encode(Message message) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0); /* length, filled in below */
+            out.writeByte(PROTOCOL_VERSION);
+            out.writeByte(message.type.ordinal());
+            out.writeInt(message.sourceAddress);
+            out.writeInt(message.destinationAddress);
+            writeBody(out, message);
+            out.flush();
+
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        } catch (IOException e) {
+            /* writing to a byte array never fails */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a message as a single frame
+     * @param out - stream to write to
+     * @param message - message to write
+     */
+    public static void writeFrame(DataOutputStream out, Message message) throws IOException {
+        out.write(encode(message));
+    }
+
+    /**
+     * Decodes the contents of a frame (everything after the length prefix)
+     * @param frame - buffer holding the frame
+     * @param offset - start of the frame contents in the buffer
+     * @param length - length of the frame contents
+     * @return the decoded message
+     */
+    public static Message decode(byte[] frame, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame, offset, length));
+        byte version = in.readByte();
+        if (version != PROTOCOL_VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+        Message.MessageType type = readType(in);
+        int sourceAddress = in.readInt();
+        int destinationAddress = in.readInt();
+        return readBody(in, type, sourceAddress, destinationAddress);
+    }
+
+    private static Message.MessageType readType(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag >= TYPES.length) {
+            throw new IOException("Unknown message type: " + tag);
+        }
+        return TYPES[tag];
+    }
+
+    private static void writeBody(DataOutput out, Message message) throws IOException {
+        switch(message.type) {
+            case GETADDR:
+                break;
+            case BLOCK_CHAIN:
+                out.writeInt(message.height);
+                break;
+            case GETADDR_RES:
+                out.writeInt(message.addresses.size());
+                for (int address : message.addresses) {
+                    out.writeInt(address);
+                }
+                break;
+            case ADDR:
+                out.writeInt(message.relayAddress);
+                break;
+            case TRANSACTION:
+                message.transaction.writeTo(out);
+                break;
+            case BLOCK:
+            case BLOCK_REQUEST_RES:
+                writeBlock(out, message.block);
+                break;
+            case BLOCK_HASH:
+                out.writeInt(message.voter);
+                out.writeUTF(message.stakeAddress);
+                out.writeInt(message.round);
+                out.writeInt(message.step);
+                message.prevBlockHash.writeTo(out);
+                message.blockHash.writeTo(out);
+                writeBytes(out, message.signature);
+                break;
+            case BLOCK_CHAIN_RES:
+                out.writeInt(message.blockchain.size());
+                for (Block block : message.blockchain) {
+                    writeBlock(out, block);
+                }
+                break;
+            case BLOCK_REQUEST:
+                message.blockHash.writeTo(out);
+                break;
+            case CERTIFICATE:
+                out.writeInt(message.certificate.round);
+                out.writeInt(message.certificate.step);
+                message.certificate.blockHash.writeTo(out);
+                out.writeInt(message.certificate.votes.size());
+                for (BlockHashMessageData vote : message.certificate.votes) {
+                    out.writeInt(vote.voter);
+                    out.writeUTF(vote.stakeAddress);
+                    vote.prevBlockHash.writeTo(out);
+                    writeBytes(out, vote.signature);
+                }
+                break;
+            case BATCH:
+                out.writeInt(message.batch.size());
+                for (Message packed : message.batch) {
+                    if (packed.type == Message.MessageType.BATCH) {
+                        throw new IOException("Batches cannot be nested");
+                    }
+                    out.writeByte(packed.type.ordinal());
+                    writeBody(out, packed);
+                }
+                break;
+        }
+    }
+
+    private static Message readBody(DataInputStream in, Message.MessageType type,
+                                    int sourceAddress, int destinationAddress) throws IOException {
+        switch(type) {
+            case GETADDR:
+                return Message.buildGetAddrMessage(sourceAddress, destinationAddress);
+            case GETADDR_RES: {
+                int count = readCount(in, MIN_ADDRESS_BYTES);
+                List<Integer> addresses = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    addresses.add(in.readInt());
+                }
+                return Message.buildAddrResponseMessage(sourceAddress, destinationAddress, addresses);
+            }
+            case ADDR:
+                return Message.buildAddrMessage(sourceAddress, destinationAddress, in.readInt());
+            case TRANSACTION:
+                return Message.buildTransactionMessage(sourceAddress, destinationAddress, Transaction.readFrom(in));
+            case BLOCK:
+                return Message.buildBlockMessage(sourceAddress, destinationAddress, readBlock(in));
+            case BLOCK_HASH: {
+                int voter = in.readInt();
+                String stakeAddress = in.readUTF();
+                int round = in.readInt();
+                int step = in.readInt();
+                Hash prevBlockHash = Hash.readFrom(in);
+                Hash blockHash = Hash.readFrom(in);
+                byte[] signature = readBytes(in);
+                BlockHashMessageData data = new BlockHashMessageData(
+                        voter, stakeAddress, round, step, prevBlockHash, blockHash, signature);
+                return Message.buildBlockHashMessage(sourceAddress, destinationAddress, data);
+            }
+            case BLOCK_CHAIN:
+                return Message.buildBlockChainMessage(sourceAddress, destinationAddress, in.readInt());
+            case BLOCK_CHAIN_RES: {
+                int count = readCount(in, MIN_BLOCK_BYTES);
+                List<Block> blocks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    blocks.add(readBlock(in));
+                }
+                return Message.buildBlockChainResMessage(sourceAddress, destinationAddress, blocks);
+            }
+            case BLOCK_REQUEST:
+                return Message.buildBlockReqMessage(sourceAddress, destinationAddress, Hash.readFrom(in));
+            case BLOCK_REQUEST_RES:
+                return Message.buildBlockReqResMessage(sourceAddress, destinationAddress, readBlock(in));
+            case CERTIFICATE: {
+                int round = in.readInt();
+                int step = in.readInt();
+                Hash blockHash = Hash.readFrom(in);
+                int count = readCount(in, MIN_VOTE_BYTES);
+                List<BlockHashMessageData> votes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int voter = in.readInt();
+                    String stakeAddress = in.readUTF();
+                    Hash prevBlockHash = Hash.readFrom(in);
+                    byte[] signature = readBytes(in);
+                    votes.add(new BlockHashMessageData(
+                            voter, stakeAddress, round, step, prevBlockHash, blockHash, signature));
+                }
+                CertificateMessageData data = new CertificateMessageData(round, step, blockHash, votes);
+                return Message.buildCertificateMessage(sourceAddress, destinationAddress, data);
+            }
+            case BATCH: {
+                int count = readCount(in, MIN_PACKED_MESSAGE_BYTES);
+                List<Message> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Message.MessageType packedType = readType(in);
+                    if (packedType == Message.MessageType.BATCH) {
+                        throw new IOException("Batches cannot be nested");
+                    }
+                    messages.add(readBody(in, packedType, sourceAddress, destinationAddress));
+                }
+                return Message.buildBatchMessage(sourceAddress, destinationAddress, messages);
+            }
+        }
+        throw new IOException("Unhandled message type: " + type);
+    }
+
+    private static void writeBlock(DataOutput out, Block block) throws IOException {
+        out.writeInt(block.transactions.length);
+        for (Transaction tx : block.transactions) {
+            tx.writeTo(out);
+        }
+        out.writeInt(block.round);
+        out.writeInt(block.priority);
+        out.writeInt(block.seed);
+        out.writeLong(block.timestamp == null ? -1 : block.timestamp.getTime());
+        block.prevBlockHash.writeTo(out);
+        out.writeUTF(block.stakeAddress == null ? "" : block.stakeAddress);
+        writeBytes(out, block.signature);
+    }
+
+    private static Block readBlock(DataInputStream in) throws IOException {
+        int count = readCount(in, MIN_TRANSACTION_BYTES);
+        Transaction[] transactions = new Transaction[count];
+        for (int i = 0; i < count; i++) {
+            transactions[i] = Transaction.readFrom(in);
+        }
+        int round = in.readInt();
+        int priority = in.readInt();
+        int seed = in.readInt();
+        long time = in.readLong();
+        Timestamp timestamp = time == -1 ? null : new Timestamp(time);
+        Hash prevBlockHash = Hash.readFrom(in);
+        String stakeAddress = in.readUTF();
+        byte[] signature = readBytes(in);
+        return new Block(transactions, round, priority, seed, timestamp, prevBlockHash,
+                stakeAddress.isEmpty() ? null : stakeAddress, signature);
+    }
+
+    /**
+     * Writes a short byte string such as a key or signature. Null is written as length -1
+     */
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeShort(-1);
+            return;
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        int length = in.readShort();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IOException("Invalid byte string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a collection size and rejects values that could not fit in the rest of the frame
+     * @param in - frame being decoded
+     * @param minElementBytes - fewest bytes one element can be encoded in
+     */
+    private static int readCount(DataInputStream in, int minElementBytes) throws IOException {
+        int count = in.readInt();
+        /* frames are decoded from a byte array, so available() is exactly the bytes left */
+        if (count < 0 || count > in.available() / minElementBytes) {
+            throw new IOException("Invalid element count: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,288 @@
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Takes messages decoded by the InboundDataRouter off the inbound queue
+ * and routes them to their handlers
+ */
+public class MessageDispatcher implements Runnable {
+    @Override
+    public void run() {
+        while(true) {
+            try {
+                Message message = ConnectionManager.inboundMessageQueue.take();
+                route(message);
+            } catch (InterruptedException e) {
+                // shutdown
+                return;
+            } catch (RuntimeException e) {
+                /* a malformed message must not stop the dispatcher */
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Hands a message to its handler
+     * @param message - message received from another client
+     */
+    private void route(Message message) {
+        //System.out.println("INBOUND: " + message.type + " from " + message.sourceAddress);
+        switch(message.type) {
+            case GETADDR:
+                getaddr(message);
+                break;
+            case GETADDR_RES:
+                getaddr_res(message);
+                break;
+            case ADDR:
+                addr(message);
+                break;
+            case TRANSACTION:
+                transaction(message);
+                break;
+            case BLOCK:
+                block(message);
+                break;
+            case BLOCK_HASH:
+                block_hash(message);
+                break;
+            case BLOCK_CHAIN:
+                block_chain(message);
+                break;
+            case BLOCK_CHAIN_RES:
+                block_chain_res(message);
+                break;
+            case BLOCK_REQUEST:
+                block_request(message);
+                break;
+            case BLOCK_REQUEST_RES:
+                block_request_res(message);
+                break;
+            case CERTIFICATE:
+                certificate(message);
+                break;
+        }
+    }
+
+    /**
+     * Prepares a response message with list of this client's known addresses
+     * to send back.
+     * @param message - message received from another client
+     */
+    private void getaddr(Message message) {
+        ConnectionManager.knownClientsLock.lock();
+        try {
+            List<Integer> addresses = new LinkedList<>(ConnectionManager.knownClients);
+            Message response = Message.buildAddrResponseMessage(ConnectionManager.inboundPort, message.sourceAddress, addresses);
+            ConnectionManager.outBoundMessageQueue.add(response);
+        } finally {
+            ConnectionManager.knownClientsLock.unlock();
+        }
+    }
+
+    /**
+     * Merges received address list from message with this client's
+     * known addresses
+     * @param message - message received from another client
+     */
+    private void getaddr_res(Message message) {
+        ConnectionManager.knownClientsLock.lock();
+        try {
+            ConnectionManager.knownClients.addAll(message.addresses);
+        } finally {
+            ConnectionManager.knownClientsLock.unlock();
+        }
+    }
+
+    /**
+     * Relays the address of the client who sent to message
+     * to all known clients
+     * @param message
+     */
+    private void addr(Message message) {
+        boolean gossip = false;
+        ConnectionManager.knownClientsLock.lock();
+        try {
+            if (!ConnectionManager.knownClients.contains(message.relayAddress)) {
+                ConnectionManager.knownClients.add(message.relayAddress);
+                gossip = true;
+            }
+        } finally {
+            ConnectionManager.knownClientsLock.unlock();
+        }
+
+        if (gossip) {
+            Set<Integer> excludedAddresses = new HashSet<>();
+            excludedAddresses.add(message.relayAddress);
+            excludedAddresses.add(message.sourceAddress);
+            ConnectionManager.gossip(Message.MessageType.ADDR, message.relayAddress, excludedAddresses);
+        }
+    }
+
+    /**
+     * Process a received address
+     * @param message - message received from another client
+     */
+    private void addr_res(Message message) {
+        System.out.println("Received address");
+        ConnectionManager.knownClientsLock.lock();
+        try {
+            ConnectionManager.knownClients.add(message.relayAddress);
+        } finally {
+            ConnectionManager.knownClientsLock.unlock();
+        }
+    }
+
+    /**
+     * Process a received transaction. The transaction is queued and relayed
+     * on a validator thread once it passes admission
+     * @param message - message received from another client
+     */
+    private void transaction(Message message) {
+        Transaction tx = message.transaction;
+        if (!ConnectionManager.transactionsSeen.contains(tx.id)) {
+            ConnectionManager.transactionsSeen.add(tx.id);
+            ConnectionManager.transactionValidator.admit(tx).thenAccept(admitted -> {
+                if (admitted) {
+                    Set<Integer> excludedAddresses = new HashSet<>();
+                    excludedAddresses.add(message.sourceAddress);
+                    ConnectionManager.gossip(Message.MessageType.TRANSACTION, tx, excludedAddresses);
+                }
+            });
+        }
+    }
+
+    /**
+     * Process a block proposal message. The proposal is stored and relayed
+     * once its signature checks out. It is only marked as seen then, so a
+     * badly signed copy that arrives first can't shut out the real one
+     * @param message - message received from another client
+     */
+    private void block(Message message) {
+        Block block = message.block;
+        Hash blockHash = Block.getHash(block);
+        if (!ConnectionManager.blockProposalsSeen.contains(blockHash)) {
+            ConnectionManager.signatureVerifier.verify(block).thenAccept(valid -> {
+                if (valid && ConnectionManager.blockProposalsSeen.add(blockHash)) {
+                    Set<Integer> excludedAddresses = new HashSet<>();
+                    excludedAddresses.add(message.sourceAddress);
+                    ConnectionManager.gossip(Message.MessageType.BLOCK, block, excludedAddresses);
+                    ConnectionManager.proposalStore.add(block);
+                }
+            });
+        }
+    }
+
+    /**
+     * Process a block hash vote message. The vote is counted, relayed and
+     * marked as seen on a verifier thread once its signature checks out
+     * @param message
+     */
+    private void block_hash(Message message) {
+        BlockHashMessageData data = new BlockHashMessageData(
+                message.voter, message.stakeAddress, message.round, message.step,
+                message.prevBlockHash, message.blockHash, message.signature);
+        Hash voteHash = Algorand.getVoteHash(data);
+        if (!ConnectionManager.blockHashVotesSeen.contains(voteHash)) {
+            ConnectionManager.signatureVerifier.verify(data).thenAccept(valid -> {
+                if (valid && ConnectionManager.blockHashVotesSeen.add(voteHash)) {
+                    countVote(message, data);
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts a verified vote and relays it, or the certificate it completes
+     * @param message - message the vote arrived in
+     * @param data - the vote
+     */
+    private void countVote(Message message, BlockHashMessageData data) {
+        /* once a step is decided its certificate has been sent, so the
+           vote doesn't need relaying */
+        boolean decided = ConnectionManager.voteTally.getWinner(data.round, data.step) != null;
+        CertificateMessageData certificate = ConnectionManager.voteTally.add(data);
+
+        Set<Integer> excludedAddresses = new HashSet<>();
+        excludedAddresses.add(message.sourceAddress);
+        if (certificate != null) {
+            ConnectionManager.gossip(Message.MessageType.CERTIFICATE, certificate, excludedAddresses);
+        } else if (!decided) {
+            excludedAddresses.add(data.voter);
+            ConnectionManager.gossip(Message.MessageType.BLOCK_HASH, data, excludedAddresses);
+        }
+    }
+
+    /**
+     * Process a certificate message. Once every vote in it checks out, counts
+     * its votes and, if they decide a step this client hadn't decided yet,
+     * relays the certificate
+     * @param message - message received from another client
+     */
+    private void certificate(Message message) {
+        CertificateMessageData certificate = message.certificate;
+        if (ConnectionManager.voteTally.getWinner(certificate.round, certificate.step) != null) {
+            return;
+        }
+        ConnectionManager.signatureVerifier.verifyAll(certificate.votes).thenAccept(valid -> {
+            if (!valid || ConnectionManager.voteTally.getWinner(certificate.round, certificate.step) != null) {
+                return;
+            }
+            for (BlockHashMessageData vote : certificate.votes) {
+                ConnectionManager.blockHashVotesSeen.add(Algorand.getVoteHash(vote));
+                ConnectionManager.voteTally.add(vote);
+            }
+            if (certificate.blockHash.equals(
+                    ConnectionManager.voteTally.getWinner(certificate.round, certificate.step))) {
+                Set<Integer> excludedAddresses = new HashSet<>();
+                excludedAddresses.add(message.sourceAddress);
+                ConnectionManager.gossip(Message.MessageType.CERTIFICATE, certificate, excludedAddresses);
+            }
+        });
+    }
+
+    /**
+     * Sends a page of this client's blockchain, starting at the requested height
+     * @param message - message received from another client
+     */
+    private void block_chain(Message message) {
+        int height = Math.max(message.height, 1); /* don't need to send genesis */
+        List<Block> data = LedgerManager.getBlocks(height, Constants.SYNC_PAGE_BLOCKS);
+        Message response = Message.buildBlockChainResMessage(ConnectionManager.inboundPort, message.sourceAddress, data);
+        ConnectionManager.outBoundMessageQueue.add(response);
+    }
+
+    /**
+     * Adds a page of another client's blockchain. A full page means the
+     * other client may have more blocks, so the next page is requested
+     * @param message - message received from another client
+     */
+    private void block_chain_res(Message message) {
+        List<Block> data = message.blockchain;
+        if (LedgerManager.setLedger(data) && data.size() == Constants.SYNC_PAGE_BLOCKS) {
+            Message request = Message.buildBlockChainMessage(ConnectionManager.inboundPort, message.sourceAddress,
+                    LedgerManager.getLedgerSize());
+            ConnectionManager.outBoundMessageQueue.add(request);
+        }
+    }
+
+    private void block_request(Message message) {
+        /* check ledger */
+        Block block = LedgerManager.getBlock(message.blockHash);
+        if (block == null) { /* check proposals */
+            block = ConnectionManager.proposalStore.find(message.blockHash);
+        }
+
+        if (block != null) {
+            Message response = Message.buildBlockReqResMessage(ConnectionManager.inboundPort, message.sourceAddress, block);
+            ConnectionManager.outBoundMessageQueue.add(response);
+        }
+    }
+
+    private void block_request_res(Message message) {
+        ConnectionManager.blockFetcher.onResponse(message.block);
+    }
+}
@@ -1,39 +1,79 @@
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.net.*;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Runnable used for the thread that is responsible for sending messages
- * out to clients
+ * out to clients. Routes each message from the outbound queue to the
+ * PeerSender of its destination; every PeerSender runs on its own thread
  */
 public class OutboundDataRouter implements Runnable {
+    /**
+     * Sender for each peer, by inbound address
+     */
+    private static final Map<Integer, PeerSender> senders = new ConcurrentHashMap<>();
+    /**
+     * Threads running the senders, by inbound address
+     */
+    private static final Map<Integer, Thread> senderThreads = new ConcurrentHashMap<>();
+
     @Override
     public void run() {
-        while(true) {
-            Message message;
-            Socket connection = null;
-            try {
-                message = ConnectionManager.outBoundMessageQueue.take();
-                //System.out.println("OUTBOUND: " + message.type + " to " + message.destinationAddress);
-                connection = new Socket("127.0.0.1", message.destinationAddress);
-                ObjectOutputStream outputStream = new ObjectOutputStream(connection.getOutputStream());
-                outputStream.writeObject(message);
-                outputStream.flush();
-            } catch (ConnectException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (InterruptedException e) {
-                // shutdown
-            } finally {
-                try {
-                    if (connection != null) {
-                        connection.close();
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+        try {
+            while(true) {
+                Message message = ConnectionManager.outBoundMessageQueue.take();
+                getSender(message.destinationAddress).enqueue(message);
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        } finally {
+            for (Thread thread : senderThreads.values()) {
+                thread.interrupt();
             }
+            senders.clear();
+            senderThreads.clear();
+        }
+    }
+
+    /**
+     * Reports how many messages are waiting for each peer
+     * @return queue depth by peer address
+     */
+    public static Map<Integer, Integer> getQueueDepths() {
+        Map<Integer, Integer> depths = new TreeMap<>();
+        for (Map.Entry<Integer, PeerSender> entry : senders.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().getQueueDepth());
+        }
+        return depths;
+    }
+
+    /**
+     * Reports how many messages have been dropped for each peer
+     * @return dropped message count by peer address
+     */
+    public static Map<Integer, Long> getDroppedCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, PeerSender> entry : senders.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().getDropped());
+        }
+        return counts;
+    }
+
+    /**
+     * Retrieves the sender of a peer, starting one if this is the first message to it
+     * @param address - inbound address of the peer
+     * @return the peer's sender
+     */
+    private PeerSender getSender(int address) {
+        PeerSender sender = senders.get(address);
+        if (sender == null) {
+            sender = new PeerSender(address);
+            senders.put(address, sender);
+            Thread thread = new Thread(sender);
+            thread.setDaemon(true);
+            senderThreads.put(address, thread);
+            thread.start();
         }
+        return sender;
     }
-}
\ No newline at end of file
+}
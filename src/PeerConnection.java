@@ -0,0 +1,96 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Long-lived connection to the inbound port of another client.
+ * Carries a stream of framed messages and reconnects when the
+ * connection breaks
+ */
+public class PeerConnection {
+    /**
+     * Inbound address (port) of the peer
+     */
+    private final int address;
+    private Socket socket = null;
+    private DataOutputStream outputStream = null;
+    /**
+     * Time the connection was last used to send a message
+     */
+    private long lastUsed;
+
+    public PeerConnection(int address) {
+        this.address = address;
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Sends a message, opening the connection first if needed. If the
+     * connection turns out to be broken it is reopened and the send is
+     * retried once
+     * @param message - message to send
+     */
+    public void send(Message message) throws IOException {
+        byte[] frame = MessageCodec.encode(message);
+        lastUsed = System.currentTimeMillis();
+        if (socket != null) {
+            try {
+                write(frame);
+                return;
+            } catch (IOException e) {
+                close();
+            }
+        }
+        connect();
+        try {
+            write(frame);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks whether the connection has gone unused for longer than the idle timeout
+     * @param now - current time in milliseconds
+     * @return true if open and idle; false otherwise
+     */
+    public boolean isIdle(long now) {
+        return socket != null && now - lastUsed >= Constants.PEER_IDLE_TIMEOUT;
+    }
+
+    /**
+     * Closes the connection. The next send reopens it
+     */
+    public void close() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        socket = null;
+        outputStream = null;
+    }
+
+    private void connect() throws IOException {
+        Socket connection = new Socket();
+        try {
+            connection.setTcpNoDelay(true);
+            connection.connect(new InetSocketAddress("127.0.0.1", address), Constants.PEER_CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        socket = connection;
+        outputStream = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+    }
+
+    private void write(byte[] frame) throws IOException {
+        outputStream.write(frame);
+        outputStream.flush();
+    }
+}
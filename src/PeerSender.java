@@ -0,0 +1,133 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runnable used for the thread that delivers messages to a single peer.
+ * Each peer has its own bounded queue, so a slow or unreachable peer
+ * only delays its own messages. When the queue is full the oldest
+ * message is dropped to make room for the newest. Messages that are
+ * queued close together are packed into a single batch frame
+ */
+public class PeerSender implements Runnable {
+    /**
+     * Inbound address (port) of the peer
+     */
+    private final int address;
+    /**
+     * Messages waiting to be sent to the peer
+     */
+    private final LinkedBlockingDeque<Message> queue =
+            new LinkedBlockingDeque<>(Constants.PEER_QUEUE_CAPACITY);
+    /**
+     * Number of messages dropped because the queue was full or the peer was unreachable
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Message taken off the queue that couldn't join the last batch. It starts
+     * the next frame. Only used by the sender's own thread
+     */
+    private Message held = null;
+
+    public PeerSender(int address) {
+        this.address = address;
+    }
+
+    /**
+     * Queues a message for the peer without blocking
+     * @param message - message to send
+     */
+    public void enqueue(Message message) {
+        while (!queue.offerLast(message)) {
+            if (queue.pollFirst() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return number of messages waiting to be sent
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of messages dropped so far
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        PeerConnection connection = new PeerConnection(address);
+        try {
+            while(true) {
+                Message message = held;
+                held = null;
+                if (message == null) {
+                    message = queue.pollFirst(Constants.PEER_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                if (message == null) {
+                    if (connection.isIdle(System.currentTimeMillis())) {
+                        connection.close();
+                    }
+                    continue;
+                }
+                List<Message> messages = collectBatch(message);
+                if (messages.size() > 1) {
+                    message = Message.buildBatchMessage(message.sourceAddress, address, messages);
+                }
+                //System.out.println("OUTBOUND: " + message.type + " to " + message.destinationAddress);
+                try {
+                    connection.send(message);
+                } catch (IOException e) {
+                    dropped.addAndGet(messages.size());
+                    e.printStackTrace();
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Collects the messages that go out in the same frame as first: whatever
+     * arrives within the flush window, up to the batch size limit. Blockchain
+     * responses are large, so they are never batched. A message that can't
+     * join the batch is held for the next frame rather than put back on the
+     * queue, where the drop-oldest policy could lose it uncounted
+     * @param first - message that starts the batch
+     * @return messages to send together
+     */
+    private List<Message> collectBatch(Message first) throws InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        messages.add(first);
+        if (first.type == Message.MessageType.BLOCK_CHAIN_RES) {
+            return messages;
+        }
+        long deadline = System.currentTimeMillis() + Constants.BATCH_FLUSH_WINDOW;
+        while (messages.size() < Constants.BATCH_MAX_MESSAGES) {
+            long remaining = deadline - System.currentTimeMillis();
+            Message next = remaining > 0
+                    ? queue.pollFirst(remaining, TimeUnit.MILLISECONDS)
+                    : queue.pollFirst();
+            if (next == null) {
+                break;
+            }
+            if (next.type == Message.MessageType.BLOCK_CHAIN_RES
+                    || next.sourceAddress != first.sourceAddress) {
+                held = next;
+                break;
+            }
+            messages.add(next);
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runnable used in pipelined mode to assemble and gossip the proposal for
+ * the next round while BA* of the current round is still counting votes.
+ *
+ * The proposal speculatively extends the block that entered BA* (or the
+ * last block in the ledger if that block is empty). If the current round
+ * commits a different block, the proposal no longer extends the ledger, so
+ * Algorand discards it and returns its transactions to the mempool. Proposals
+ * are only ever accepted on top of the committed chain, so commit order is
+ * unaffected
+ */
+public class PipelinedProposer implements Runnable {
+    /**
+     * Round the proposal is for
+     */
+    private final int round;
+    /**
+     * Hash of the block the proposal builds on
+     */
+    private final Hash prevBlockHash;
+    /**
+     * Block the proposal builds on if it isn't in the ledger yet; null otherwise
+     */
+    private final Block parent;
+    /**
+     * Ids of transactions in the block the proposal builds on. These must not be proposed again
+     */
+    private final Set<Integer> excludedIds = new HashSet<>();
+    /**
+     * The proposal, once assembled
+     */
+    private volatile Block proposal = null;
+
+    /**
+     * @param round - round the proposal is for
+     * @param candidate - block that entered BA* in the previous round
+     */
+    public PipelinedProposer(int round, Block candidate) {
+        this.round = round;
+        if (Block.getHash(candidate).equals(Block.EMPTY_HASH)) {
+            this.prevBlockHash = Block.getHash(LedgerManager.getLastBlock());
+            this.parent = null;
+        } else {
+            this.prevBlockHash = Block.getHash(candidate);
+            this.parent = candidate;
+            for (Transaction tx : candidate.transactions) {
+                excludedIds.add(tx.id);
+            }
+        }
+    }
+
+    /**
+     * @return the assembled proposal, or null if there wasn't one
+     */
+    public Block getProposal() {
+        return proposal;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Transaction[] transactions = takeTransactions();
+                if (transactions != null) {
+                    /* the block built on may not be committed yet, so stake comes from the block before it */
+                    Hash stakeBlockHash = Algorand.getProposerStakeHash(
+                            parent == null ? LedgerManager.getBlock(prevBlockHash) : parent);
+                    String stakeAddress = Algorand.selectProposer(round, stakeBlockHash);
+                    if (stakeAddress != null) {
+                        proposal = Algorand.proposeBlock(transactions, round, stakeAddress, stakeBlockHash, prevBlockHash);
+                    } else {
+                        ConnectionManager.mempool.addAll(List.of(transactions));
+                    }
+                    return;
+                }
+                Thread.sleep(Constants.PROPOSAL_POLL_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            // round is over
+        }
+    }
+
+    /**
+     * Takes up to the block budget of the highest priority transactions that aren't in
+     * the block being built on and are valid on top of it. Waits for the same
+     * trigger as a regular proposal
+     * @return the transactions, or null if no proposal should be made yet
+     */
+    private Transaction[] takeTransactions() {
+        if (!ConnectionManager.mempool.isReady(
+                Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES, Constants.PROPOSAL_MAX_WAIT)) {
+            return null;
+        }
+        BlockBuilder builder = parent == null
+                ? new BlockBuilder(Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES)
+                : new BlockBuilder(parent, Constants.MAX_BLOCK_TRANSACTIONS, Constants.MAX_BLOCK_BYTES);
+        builder.fill(ConnectionManager.mempool, excludedIds);
+        if (builder.size() == 0) {
+            return null;
+        }
+        return builder.getTransactions();
+    }
+}
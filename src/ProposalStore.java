@@ -0,0 +1,186 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the block proposals of this client and those received from other
+ * clients, bucketed by round and indexed by hash. Shared by Algorand and
+ * the MessageDispatcher; neither ever drains it. Proposals for a future
+ * round sit in that round's bucket until Algorand gets there. Also tracks
+ * how long proposals take to arrive after a round starts, which sizes the
+ * proposal window
+ */
+public class ProposalStore {
+    /**
+     * Proposals by round
+     */
+    private final NavigableMap<Integer, List<Block>> rounds = new TreeMap<>();
+    /**
+     * Every stored proposal by its hash. Read without taking the store's lock
+     */
+    private final Map<Hash, Block> byHash = new ConcurrentHashMap<>();
+    /**
+     * Proposals for this round or earlier are discarded on arrival
+     */
+    private int discardedThrough = Integer.MIN_VALUE;
+    /**
+     * Round whose proposal stage is running, and when it started
+     */
+    private int currentRound = Integer.MIN_VALUE;
+    private long roundStart = 0;
+    /**
+     * Milliseconds between the start of a round and the arrival of its
+     * proposals, for the most recent proposals
+     */
+    private final Deque<Long> arrivalLatencies = new ArrayDeque<>();
+
+    /**
+     * Stores a proposal received from another client
+     * @param block - proposed block
+     */
+    public synchronized void add(Block block) {
+        if (!store(block)) {
+            return;
+        }
+        /* proposals that arrive before this client starts their round can't be
+           timed against it, so they don't count towards the window */
+        if (block.round == currentRound) {
+            recordLatency(System.currentTimeMillis() - roundStart);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Stores a proposal made by this client
+     * @param block - proposed block
+     */
+    public synchronized void addLocal(Block block) {
+        if (store(block)) {
+            notifyAll();
+        }
+    }
+
+    private boolean store(Block block) {
+        if (block.round <= discardedThrough || byHash.putIfAbsent(Block.getHash(block), block) != null) {
+            return false;
+        }
+        rounds.computeIfAbsent(block.round, r -> new ArrayList<>()).add(block);
+        return true;
+    }
+
+    /**
+     * Removes a proposal made by this client that turned out to be unusable
+     * @param block - proposed block
+     */
+    public synchronized void remove(Block block) {
+        if (byHash.remove(Block.getHash(block)) != null) {
+            List<Block> proposals = rounds.get(block.round);
+            if (proposals != null) {
+                proposals.remove(block);
+            }
+        }
+    }
+
+    /**
+     * Marks the start of the proposal stage of a round
+     * @param round - round that is starting
+     */
+    public synchronized void startRound(int round) {
+        currentRound = round;
+        roundStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Waits until count proposals for round have been received or the timeout passes
+     * @param round - round of the proposals
+     * @param count - number of proposals to wait for
+     * @param timeout - milliseconds to wait
+     * @return number of proposals received for round
+     */
+    public synchronized int awaitProposals(int round, int count, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while(true) {
+            List<Block> proposals = rounds.get(round);
+            int received = proposals == null ? 0 : proposals.size();
+            long remaining = deadline - System.currentTimeMillis();
+            if (received >= count || remaining <= 0) {
+                return received;
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * Sizes the proposal window from recently observed arrival latencies
+     * @return milliseconds to wait for proposals
+     */
+    public synchronized long getProposalTimeout() {
+        if (arrivalLatencies.isEmpty()) {
+            return Constants.PROPOSAL_TIMEOUT;
+        }
+        Long[] latencies = arrivalLatencies.toArray(new Long[0]);
+        Arrays.sort(latencies);
+        int index = (int) Math.ceil(latencies.length * Constants.PROPOSAL_LATENCY_PERCENTILE) - 1;
+        long timeout = latencies[Math.max(index, 0)] * Constants.PROPOSAL_TIMEOUT_FACTOR;
+        return Math.max(Constants.MIN_PROPOSAL_TIMEOUT, Math.min(timeout, Constants.PROPOSAL_TIMEOUT));
+    }
+
+    private void recordLatency(long latency) {
+        arrivalLatencies.addLast(latency);
+        if (arrivalLatencies.size() > Constants.PROPOSAL_LATENCY_SAMPLES) {
+            arrivalLatencies.removeFirst();
+        }
+    }
+
+    /**
+     * Retrieves the proposals received for a round
+     * @param round - round of the proposals
+     * @return copy of the proposals for round
+     */
+    public synchronized List<Block> getProposals(int round) {
+        List<Block> proposals = rounds.get(round);
+        if (proposals == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(proposals);
+    }
+
+    /**
+     * Checks whether any proposal for round or a later round has been received
+     * @param round - earliest round of interest
+     * @return true if there is such a proposal; false otherwise
+     */
+    public synchronized boolean hasProposals(int round) {
+        return !rounds.tailMap(round, true).isEmpty();
+    }
+
+    /**
+     * Looks up a stored proposal by its hash
+     * @param blockHash - hash of the block
+     * @return the block, or null if it isn't stored
+     */
+    public Block find(Hash blockHash) {
+        return byHash.get(blockHash);
+    }
+
+    /**
+     * Discards the proposals of every round up to and including round
+     * @param round - last round to discard
+     */
+    public synchronized void discardRoundsUpTo(int round) {
+        Map<Integer, List<Block>> finished = rounds.headMap(round, true);
+        for (List<Block> proposals : finished.values()) {
+            for (Block block : proposals) {
+                byHash.remove(Block.getHash(block));
+            }
+        }
+        finished.clear();
+        discardedThrough = Math.max(discardedThrough, round);
+    }
+}
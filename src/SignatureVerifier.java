@@ -0,0 +1,100 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks the signatures of received votes and proposals on a pool of
+ * worker threads, so verification runs in parallel and off the dispatcher
+ * and consensus threads. Verifications are cached from the moment they
+ * start, so a vote or proposal that arrives again through another peer,
+ * even while its first copy is still being checked, is never verified twice
+ */
+public class SignatureVerifier {
+    private final ExecutorService workers = Executors.newFixedThreadPool(
+            Constants.VERIFIER_THREADS,
+            runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+    /**
+     * Recent verifications, finished or in flight, keyed by a hash of key, data and signature
+     */
+    private final Map<Hash, CompletableFuture<Boolean>> results = Collections.synchronizedMap(
+            new LinkedHashMap<Hash, CompletableFuture<Boolean>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Hash, CompletableFuture<Boolean>> eldest) {
+                    return size() > Constants.SIGNATURE_CACHE_SIZE;
+                }
+            });
+
+    /**
+     * Verifies the signature of a vote. It must be made with the key
+     * registered for the vote's stake account, or the vote could claim any
+     * account's stake
+     * @param vote - vote to verify
+     * @return future that completes with true if the signature is valid
+     */
+    public CompletableFuture<Boolean> verify(BlockHashMessageData vote) {
+        return verify(KeyManager.getStakeKey(vote.stakeAddress), Algorand.getVoteHash(vote).getBytes(), vote.signature);
+    }
+
+    /**
+     * Verifies the signatures of several votes
+     * @param votes - votes to verify
+     * @return future that completes with true if every signature is valid
+     */
+    public CompletableFuture<Boolean> verifyAll(List<BlockHashMessageData> votes) {
+        CompletableFuture<Boolean> all = CompletableFuture.completedFuture(true);
+        for (BlockHashMessageData vote : votes) {
+            all = all.thenCombine(verify(vote), (a, b) -> a && b);
+        }
+        return all;
+    }
+
+    /**
+     * Verifies the proposer's signature on a block. It must be made with the
+     * key registered for the stake account the block names as its proposer
+     * @param block - proposed block
+     * @return future that completes with true if the signature is valid
+     */
+    public CompletableFuture<Boolean> verify(Block block) {
+        if (block.stakeAddress == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return verify(KeyManager.getStakeKey(block.stakeAddress), Block.getHash(block).getBytes(), block.signature);
+    }
+
+    private CompletableFuture<Boolean> verify(byte[] publicKey, byte[] data, byte[] signature) {
+        if (publicKey == null || signature == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        Hash key = cacheKey(publicKey, data, signature);
+        return results.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(
+                () -> KeyManager.verify(publicKey, data, signature), workers));
+    }
+
+    private static Hash cacheKey(byte[] publicKey, byte[] data, byte[] signature) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(publicKey.length);
+            out.write(publicKey);
+            out.writeInt(data.length);
+            out.write(data);
+            out.write(signature);
+            out.flush();
+            return Hash.sha256(bytes.toByteArray());
+        } catch (IOException e) {
+            /* writing to a byte array never fails */
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Stake-weighted sortition. Each unit of currency held by an account is a
+ * sub-user that is selected with probability expected size / total stake,
+ * so the number of selected sub-users of an account follows a binomial
+ * distribution. The selection is drawn from a hash of the account, round
+ * and step, which lets every client recompute the number of votes carried
+ * by any vote it receives. Stake is read from the balances as of the block
+ * being built on, not the live ledger, so clients at different commit
+ * points agree on it
+ */
+public class Sortition {
+    /**
+     * What an account is being selected for
+     */
+    enum Role {
+        PROPOSER,
+        COMMITTEE
+    }
+
+    /**
+     * Number of votes an account casts in a step
+     * @param stakeAddress - account voting
+     * @param round - round of the vote
+     * @param step - step of the vote
+     * @param stakeBlockHash - hash of the block whose balances give the stake
+     * @return number of selected sub-users; 0 if the account isn't on the committee
+     */
+    public static int committeeVotes(String stakeAddress, int round, int step, Hash stakeBlockHash) {
+        Hash hash = hash(stakeAddress, Role.COMMITTEE, round, step);
+        return select(hash, LedgerManager.getStake(stakeAddress, stakeBlockHash),
+                Constants.EXPECTED_COMMITTEE_SIZE, Constants.CURRENCY_SUPPLY);
+    }
+
+    /**
+     * Priority of an account's block proposal in a round
+     * @param stakeAddress - account proposing
+     * @param round - round of the proposal
+     * @param stakeBlockHash - hash of the block whose balances give the stake
+     * @return priority of the proposal; 0 if the account isn't selected to propose
+     */
+    public static int proposerPriority(String stakeAddress, int round, Hash stakeBlockHash) {
+        Hash hash = hash(stakeAddress, Role.PROPOSER, round, 0);
+        int selected = select(hash, LedgerManager.getStake(stakeAddress, stakeBlockHash),
+                Constants.NUM_PROPOSERS, Constants.CURRENCY_SUPPLY);
+        if (selected == 0) {
+            return 0;
+        }
+        byte[] bytes = hash.getBytes();
+        int priority = ((bytes[8] & 0x7f) << 24) | ((bytes[9] & 0xff) << 16)
+                | ((bytes[10] & 0xff) << 8) | (bytes[11] & 0xff);
+        return Math.max(priority, 1);
+    }
+
+    /**
+     * Draws the number of selected sub-users from Binomial(stake, expectedSize / totalStake),
+     * using the hash as the source of randomness. Walks the distribution from 0, which
+     * takes about stake * expectedSize / totalStake steps. Probabilities are
+     * kept as logarithms, since for a large stake the first terms are too
+     * small for a double
+     * @param hash - sortition hash
+     * @param stake - balance of the account
+     * @param expectedSize - expected number of sub-users selected across all accounts
+     * @param totalStake - total currency supply
+     * @return number of selected sub-users
+     */
+    public static int select(Hash hash, int stake, double expectedSize, int totalStake) {
+        if (stake <= 0) {
+            return 0;
+        }
+        double p = expectedSize / totalStake;
+        if (p >= 1) {
+            return stake;
+        }
+        double fraction = toFraction(hash);
+        double logOdds = Math.log(p) - Math.log1p(-p);
+        double logProbability = stake * Math.log1p(-p);
+        double cumulative = Math.exp(logProbability);
+        int mode = (int) ((stake + 1) * p);
+        int selected = 0;
+        while (fraction >= cumulative && selected < stake) {
+            logProbability += Math.log((double) (stake - selected) / (selected + 1)) + logOdds;
+            selected++;
+            double probability = Math.exp(logProbability);
+            cumulative += probability;
+            if (probability == 0 && selected > mode) {
+                /* remaining tail is below double precision */
+                break;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Computes the hash that drives the selection of an account
+     */
+    private static Hash hash(String stakeAddress, Role role, int round, int step) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(Constants.INITIAL_SEED);
+            out.writeInt(role.ordinal());
+            out.writeInt(round);
+            out.writeInt(step);
+            out.writeUTF(stakeAddress);
+            out.flush();
+            return Hash.sha256(bytes.toByteArray());
+        } catch (IOException e) {
+            /* writing to a byte array never fails */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Maps the top 53 bits of a hash to a fraction in [0, 1)
+     */
+    private static double toFraction(Hash hash) {
+        byte[] bytes = hash.getBytes();
+        long bits = 0;
+        for (int i = 0; i < 7; i++) {
+            bits = (bits << 8) | (bytes[i] & 0xff);
+        }
+        return (bits >>> 3) / (double) (1L << 53);
+    }
+}
@@ -1,6 +1,6 @@
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.DataOutputStream;
 import java.net.*;
 import java.util.Random;
 import java.util.Scanner;
@@ -8,29 +8,34 @@ import java.util.Scanner;
 public class Tester {
     private final int PORT = 9010;
     private final int CONNECT_PORT = 5000;
+    /**
+     * Transactions sent for each batch entered. The clients decide how
+     * transactions are split into blocks; this only sets how many are sent at once
+     */
+    private final int TRANSACTIONS_PER_BATCH = 10;
     private int currentTxId;
     //private Map<String, Integer> balances = new HashMap<>();
-    private int[] balances = new int[Constants.BLOCK_SIZE];
-    private int[] newBalances = new int[Constants.BLOCK_SIZE];
+    private int[] balances = new int[Constants.GENESIS_ACCOUNTS];
+    private int[] newBalances = new int[Constants.GENESIS_ACCOUNTS];
 
     public Tester() {
         // populate initial wallet balances
         Block genesis = LedgerManager.buildGenesis();
-        for (int i = 0; i < Constants.BLOCK_SIZE; i++) {
+        for (int i = 0; i < Constants.GENESIS_ACCOUNTS; i++) {
             //String address = "address" + i;
             //balances.put(address, genesis.transactions[i].amount);
             balances[i] = genesis.transactions[i].amount;
         }
-        currentTxId = Constants.BLOCK_SIZE - 1;
+        currentTxId = Constants.GENESIS_ACCOUNTS - 1;
 
         // user input
         Scanner sc = new Scanner(System.in);
         while (true) {
-            System.out.println("Enter number of blocks to send: ");
-            int numBlocks = sc.nextInt();
+            System.out.println("Enter number of batches of transactions to send: ");
+            int numBatches = sc.nextInt();
             // need to be able to generate a random block of valid transactions
-            for(int i = 0; i < numBlocks; i++) {
-                for(int j = 0; j < Constants.BLOCK_SIZE; j++) {
+            for(int i = 0; i < numBatches; i++) {
+                for(int j = 0; j < TRANSACTIONS_PER_BATCH; j++) {
                     Transaction tx = generateRandomValidTransaction();
                     System.out.println("tx: ");
                     System.out.println(tx.toString());
@@ -57,8 +62,8 @@ public class Tester {
     private void sendTransaction(Transaction tx, int address) {
         Message message = Message.buildTransactionMessage(PORT, address, tx);
         try (Socket connection = new Socket("localhost", address)) {
-            ObjectOutputStream outputStream = new ObjectOutputStream(connection.getOutputStream());
-            outputStream.writeObject(message);
+            DataOutputStream outputStream = new DataOutputStream(connection.getOutputStream());
+            MessageCodec.writeFrame(outputStream, message);
             outputStream.flush();
             System.out.println("Sent transaction with id " + tx.id + " successfully");
         } catch (IOException e) {
@@ -70,7 +75,7 @@ public class Tester {
         // get an address with a non-zero balance
         int senderAddressNumber = -1;
         while(true) {
-            senderAddressNumber = r.nextInt(Constants.BLOCK_SIZE);
+            senderAddressNumber = r.nextInt(Constants.GENESIS_ACCOUNTS);
             if (balances[senderAddressNumber] > 0) {
                 break;
             }
@@ -95,7 +100,7 @@ public class Tester {
         // get random address that isn't the sender
         int recipientAddressNumber = -1;
         while(true) {
-            recipientAddressNumber = r.nextInt(Constants.BLOCK_SIZE);
+            recipientAddressNumber = r.nextInt(Constants.GENESIS_ACCOUNTS);
             if (recipientAddressNumber != senderAddressNumber) {
                 break;
             }
@@ -113,6 +118,7 @@ public class Tester {
         currentTxId++;
         String sender = "address" + senderAddressNumber;
         String recipient = "address" + recipientAddressNumber;
-        return new Transaction(currentTxId, sender, recipient, amount);
+        int fee = r.nextInt(10);
+        return new Transaction(currentTxId, sender, recipient, amount, fee);
     }
 }
@@ -1,16 +1,65 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 
 public class Transaction implements Serializable {
     public final int id;
     public final String senderAddress;
     public final String recipientAddress;
     public final int amount;
+    /**
+     * Offered by the sender to get the transaction into a block sooner.
+     * Pending transactions with higher fees are proposed first
+     */
+    public final int fee;
 
     public Transaction(int id, String senderAddress, String recipientAddress, int amount) {
+        this(id, senderAddress, recipientAddress, amount, 0);
+    }
+
+    public Transaction(int id, String senderAddress, String recipientAddress, int amount, int fee) {
         this.id = id;
         this.senderAddress = senderAddress;
         this.recipientAddress = recipientAddress;
         this.amount = amount;
+        this.fee = fee;
+    }
+
+    /**
+     * Number of bytes in the encoding written by writeTo
+     * @return encoded size of the transaction
+     */
+    public int getEncodedSize() {
+        return 4 + 2 + this.senderAddress.getBytes(StandardCharsets.UTF_8).length
+                + 2 + this.recipientAddress.getBytes(StandardCharsets.UTF_8).length + 4 + 4;
+    }
+
+    /**
+     * Writes the canonical binary encoding of the transaction
+     * @param out - stream to write to
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(this.id);
+        out.writeUTF(this.senderAddress);
+        out.writeUTF(this.recipientAddress);
+        out.writeInt(this.amount);
+        out.writeInt(this.fee);
+    }
+
+    /**
+     * Reads a transaction written by writeTo
+     * @param in - stream to read from
+     * @return the transaction
+     */
+    public static Transaction readFrom(DataInput in) throws IOException {
+        int id = in.readInt();
+        String senderAddress = in.readUTF();
+        String recipientAddress = in.readUTF();
+        int amount = in.readInt();
+        int fee = in.readInt();
+        return new Transaction(id, senderAddress, recipientAddress, amount, fee);
     }
 
     @Override
@@ -18,6 +67,7 @@ public class Transaction implements Serializable {
         return "txid:" + this.id + "\n"
                 + "  sender: " + this.senderAddress + "\n"
                 + "  recipient: " + this.recipientAddress + "\n"
-                + "  amount: " + this.amount + "\n";
+                + "  amount: " + this.amount + "\n"
+                + "  fee: " + this.fee + "\n";
     }
 }
\ No newline at end of file
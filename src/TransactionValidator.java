@@ -0,0 +1,50 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Admission stage for transactions. Checks the format of each transaction
+ * and whether its sender can cover it, on a pool of worker threads, before
+ * it is added to the mempool or relayed. Balances are read from the
+ * ledger's lock-free balance view, so admission never waits on consensus.
+ * A sender can cover a transaction if their balance minus what their
+ * pending transactions already spend is at least its amount. Transactions
+ * that are already in the ledger are never admitted again
+ */
+public class TransactionValidator {
+    private final ExecutorService workers = Executors.newFixedThreadPool(
+            Constants.VALIDATOR_THREADS,
+            runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Validates a transaction and adds it to the mempool if it's admissible
+     * @param tx - transaction to admit
+     * @return future that completes with true if the transaction was added to the mempool
+     */
+    public CompletableFuture<Boolean> admit(Transaction tx) {
+        return CompletableFuture.supplyAsync(() -> {
+            if (!isWellFormed(tx) || LedgerManager.isCommitted(tx.id)) {
+                return false;
+            }
+            int balance = LedgerManager.getBalance(tx.senderAddress);
+            return ConnectionManager.mempool.addIfFunded(tx, balance);
+        }, workers);
+    }
+
+    /**
+     * Checks the fields of a transaction, independent of any account state
+     * @param tx - transaction to check
+     * @return true if well formed; false otherwise
+     */
+    public static boolean isWellFormed(Transaction tx) {
+        return tx.id >= 0
+                && tx.amount > 0
+                && tx.fee >= 0
+                && tx.senderAddress != null && !tx.senderAddress.isEmpty()
+                && tx.recipientAddress != null && !tx.recipientAddress.isEmpty();
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Counts block hash votes as they arrive. Votes go straight into the
+ * bucket of their round and step, and a thread waiting on a step is
+ * woken as soon as a hash reaches the required majority. Each vote
+ * counts as many times as its account has sub-users selected by
+ * sortition, using the balances of the block the round builds on. Only
+ * votes built on that block count, so a vote can't pick an older block
+ * in which its account still had stake. Votes that arrive before the
+ * client starts their round are held and weighed once it does. The
+ * votes that decide a step form its certificate.
+ * Finished rounds are dropped together
+ */
+public class VoteTally {
+    /**
+     * Votes received for a single round and step
+     */
+    private static class StepTally {
+        final Map<Hash, Integer> votes = new HashMap<>();
+        final Map<Hash, List<BlockHashMessageData>> ballots = new HashMap<>();
+        final Set<String> voters = new HashSet<>();
+        /**
+         * First hash to reach the required majority, if any
+         */
+        Hash winner = null;
+    }
+
+    /**
+     * Votes received for a single round
+     */
+    private static class RoundTally {
+        /**
+         * Hash of the block the round builds on. Null until the client starts the round
+         */
+        Hash parent = null;
+        /**
+         * Votes received before the client started the round
+         */
+        final List<BlockHashMessageData> held = new ArrayList<>();
+        final Map<Integer, StepTally> steps = new HashMap<>();
+    }
+
+    /**
+     * Tallies by round
+     */
+    private final NavigableMap<Integer, RoundTally> rounds = new TreeMap<>();
+    /**
+     * Votes for this round or earlier are discarded on arrival
+     */
+    private int discardedThrough = Integer.MIN_VALUE;
+
+    private static int majorityVotes() {
+        return (int) Math.ceil(Constants.EXPECTED_COMMITTEE_SIZE * Constants.COMMITTEE_SIZE_FACTOR);
+    }
+
+    /**
+     * Starts counting the votes of a round. Votes held for it are weighed now
+     * @param round - round starting
+     * @param parent - hash of the block the round builds on
+     * @return certificates of the steps the held votes decided
+     */
+    public List<CertificateMessageData> startRound(int round, Hash parent) {
+        List<BlockHashMessageData> held;
+        synchronized (this) {
+            if (round <= discardedThrough) {
+                return new ArrayList<>();
+            }
+            RoundTally tally = rounds.computeIfAbsent(round, r -> new RoundTally());
+            tally.parent = parent;
+            held = new ArrayList<>(tally.held);
+            tally.held.clear();
+        }
+        List<CertificateMessageData> certificates = new ArrayList<>();
+        for (BlockHashMessageData vote : held) {
+            CertificateMessageData certificate = weigh(vote, parent);
+            if (certificate != null) {
+                certificates.add(certificate);
+            }
+        }
+        return certificates;
+    }
+
+    /**
+     * Retrieves the block a round builds on
+     * @param round - round to check
+     * @return hash of the block, or null if the round hasn't started
+     */
+    public synchronized Hash getParent(int round) {
+        RoundTally tally = rounds.get(round);
+        return tally == null ? null : tally.parent;
+    }
+
+    /**
+     * Records a vote. Only the first vote of each account in a step counts,
+     * and votes from accounts that weren't selected or that build on
+     * another block than the round are ignored
+     * @param vote - the vote
+     * @return the certificate of the step if this vote decided it; null otherwise
+     */
+    public CertificateMessageData add(BlockHashMessageData vote) {
+        Hash parent;
+        synchronized (this) {
+            if (vote.round <= discardedThrough) {
+                return null;
+            }
+            RoundTally tally = rounds.computeIfAbsent(vote.round, r -> new RoundTally());
+            if (tally.parent == null) {
+                tally.held.add(vote);
+                return null;
+            }
+            parent = tally.parent;
+        }
+        return weigh(vote, parent);
+    }
+
+    /**
+     * Weighs a vote by the stake of its account and records it
+     * @param vote - the vote
+     * @param parent - hash of the block the vote's round builds on
+     * @return the certificate of the step if this vote decided it; null otherwise
+     */
+    private CertificateMessageData weigh(BlockHashMessageData vote, Hash parent) {
+        if (!vote.prevBlockHash.equals(parent)) {
+            return null;
+        }
+        int weight = Sortition.committeeVotes(vote.stakeAddress, vote.round, vote.step, parent);
+        if (weight > 0) {
+            return add(vote, weight);
+        }
+        return null;
+    }
+
+    private synchronized CertificateMessageData add(BlockHashMessageData vote, int weight) {
+        if (vote.round <= discardedThrough) {
+            return null;
+        }
+        StepTally tally = rounds.computeIfAbsent(vote.round, r -> new RoundTally()).steps
+                .computeIfAbsent(vote.step, s -> new StepTally());
+        if (!tally.voters.add(vote.stakeAddress)) {
+            return null;
+        }
+        int count = tally.votes.merge(vote.blockHash, weight, Integer::sum);
+        tally.ballots.computeIfAbsent(vote.blockHash, h -> new ArrayList<>()).add(vote);
+        if (tally.winner == null && count >= majorityVotes()) {
+            tally.winner = vote.blockHash;
+            notifyAll();
+            return new CertificateMessageData(
+                    vote.round, vote.step, vote.blockHash, new ArrayList<>(tally.ballots.get(vote.blockHash)));
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a step has been decided, in which case its certificate
+     * has already been sent and individual votes don't need relaying
+     * @param round - round of the step
+     * @param step - step to check
+     * @return hash that won the step, or null if it is undecided
+     */
+    public synchronized Hash getWinner(int round, int step) {
+        RoundTally roundTally = rounds.get(round);
+        StepTally tally = roundTally == null ? null : roundTally.steps.get(step);
+        return tally == null ? null : tally.winner;
+    }
+
+    /**
+     * Waits until a block hash reaches the majority in a step or the timeout passes
+     * @param round - round of the step
+     * @param step - step to wait on
+     * @param timeout - milliseconds to wait
+     * @return the winning hash, or a timeout
+     */
+    public synchronized Algorand.VoteResult await(int round, int step, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while(true) {
+            RoundTally roundTally = rounds.get(round);
+            StepTally tally = roundTally == null ? null : roundTally.steps.get(step);
+            if (tally != null && tally.winner != null) {
+                return Algorand.VoteResult.of(tally.winner);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return Algorand.VoteResult.TIMEOUT;
+            }
+            wait(remaining);
+        }
+    }
+
+    /**
+     * Discards the votes of every round up to and including round
+     * @param round - last round to discard
+     */
+    public synchronized void discardRoundsUpTo(int round) {
+        rounds.headMap(round, true).clear();
+        discardedThrough = Math.max(discardedThrough, round);
+    }
+}